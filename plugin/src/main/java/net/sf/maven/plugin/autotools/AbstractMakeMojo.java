@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+
+
+/**
+ * The parameters and the logging setup shared by the goals running
+ * 'make', so that they can not drift apart.
+ */
+abstract class AbstractMakeMojo
+extends AbstractMojo {
+
+    /** The number of lines logged from the step log if a step fails. */
+    private static final int FAILURE_CONTEXT_LINES = 40;
+
+    /**
+     * The number of jobs 'make' runs in parallel. Zero or less means one
+     * job per available processor.
+     *
+     * @parameter expression="${autotools.makeJobs}" default-value="0"
+     */
+    private int makeJobs;
+
+    /**
+     * The load average above which 'make' does not start new jobs. Zero
+     * means the number of jobs, a negative value disables the limit.
+     *
+     * @parameter expression="${autotools.makeLoadAverage}" default-value="0"
+     */
+    private float makeLoadAverage;
+
+    /**
+     * The argument to make's '--output-sync' option, which keeps the
+     * output of parallel jobs grouped, e.g. 'target' or 'line', or
+     * 'none'. 'auto' uses 'target' if 'make --version' reports GNU make
+     * 4.0 or later, and no output synchronization otherwise.
+     *
+     * @parameter expression="${autotools.makeOutputSync}" default-value="auto"
+     */
+    private String makeOutputSync;
+
+    /**
+     * Set 'true' to share one GNU make jobserver between all modules of
+     * the build, so that the total number of jobs stays at
+     * {@link #makeJobs} under 'mvn -T'. Requires GNU make 4.4 or later.
+     *
+     * @parameter expression="${autotools.makeJobserver}" default-value="false"
+     */
+    private boolean makeJobserver;
+
+    /**
+     * The free memory in megabytes below which the shared jobserver
+     * withholds tokens. Zero disables the check.
+     *
+     * @parameter expression="${autotools.makeJobserverMinFreeMemory}" default-value="0"
+     */
+    private int makeJobserverMinFreeMemory;
+
+    /**
+     * Set 'true' to have the output of child processes written to log
+     * files directly instead of passing it through Maven's logger. Only
+     * the standard error output, and the end of the standard output of
+     * failed processes, are logged afterwards. Since the output bypasses
+     * the plugin, this can not be combined with {@link #logFilters} or
+     * {@link #spoolOutput}, and no diagnostics report is written.
+     *
+     * @parameter expression="${autotools.redirectOutput}" default-value="false"
+     */
+    private boolean redirectOutput;
+
+    /**
+     * The directory of the log files written if {@link #redirectOutput},
+     * {@link #spoolOutput} or the 'spill' {@link #logOverflow} policy
+     * is used.
+     *
+     * @parameter expression="${project.build.directory}/autotools/logs"
+     */
+    private File logDirectory;
+
+    /**
+     * The number of output lines buffered between child processes and
+     * Maven's logger, which is then fed by a thread of its own so that
+     * a slow console does not hold up the build. 0 logs synchronously.
+     *
+     * @parameter expression="${autotools.logBufferLines}" default-value="10000"
+     */
+    private int logBufferLines;
+
+    /**
+     * What to do with output lines when the log buffer is full: 'block'
+     * waits for the logger, 'drop-info' drops all lines but warnings,
+     * and 'spill' writes all lines but warnings to the goal's overflow
+     * log in {@link #logDirectory}, e.g. 'compile.overflow.log'.
+     * Warnings and errors always wait for the logger.
+     *
+     * @parameter expression="${autotools.logOverflow}" default-value="spill"
+     */
+    private String logOverflow;
+
+    /**
+     * Rules suppressing or reclassifying lines of child process output,
+     * tried in order before the built-in rules, e.g.
+     *
+     * &lt;logFilters&gt;
+     *     &lt;logFilter&gt;
+     *         &lt;pattern&gt;^libtool: (compile|link): &lt;/pattern&gt;
+     *     &lt;/logFilter&gt;
+     *     &lt;logFilter&gt;
+     *         &lt;contains&gt;warning: unused variable&lt;/contains&gt;
+     *         &lt;level&gt;info&lt;/level&gt;
+     *         &lt;stream&gt;stderr&lt;/stream&gt;
+     *     &lt;/logFilter&gt;
+     * &lt;/logFilters&gt;
+     *
+     * Each rule has one of 'contains', 'line' (the whole line, leading
+     * and trailing blanks ignored) and 'pattern' (a regular expression),
+     * a 'level' of 'suppress' (the default), 'info', 'warn' or 'error',
+     * and optionally the 'stream' it applies to.
+     *
+     * @parameter
+     */
+    private LogFilter[] logFilters;
+
+    /**
+     * Set 'true' to write all output of child processes, with
+     * timestamps, to compressed logs per step in {@link #logDirectory},
+     * e.g. 'make.log.gz' or 'check.log.gz', and to pass only warnings
+     * and errors to Maven's logger. The last lines of a failed step are
+     * logged.
+     *
+     * @parameter expression="${autotools.spoolOutput}" default-value="false"
+     */
+    private boolean spoolOutput;
+
+    /**
+     * Used to run child processes.
+     */
+    protected ProcessExecutor exec = new DefaultProcessExecutor();
+
+    /**
+     * Passes the output of child processes to Maven's logger.
+     */
+    protected StreamLogAdapter logAdapter;
+
+
+    /**
+     * Sets up the logging of child process output and the executor
+     * running them.
+     *
+     * @param goal the name of the goal, which names its log files
+     * @throws MojoExecutionException if the logging parameters are invalid
+     */
+    protected void initLogging(String goal)
+    throws MojoExecutionException {
+        if (redirectOutput) {
+            if (spoolOutput || logFilters != null && logFilters.length > 0) {
+                throw new MojoExecutionException(
+                        "redirectOutput can not be combined with spoolOutput"
+                        + " or logFilters, the output of child processes"
+                        + " does not pass through the plugin");
+            }
+            try {
+                exec = new RedirectingProcessExecutor(logDirectory, goal);
+            } catch (IOException ex) {
+                throw new MojoExecutionException(
+                        "Failed to create log directory", ex);
+            }
+        }
+        try {
+            logAdapter = new StreamLogAdapter(
+                    getLog(),
+                    logFilters,
+                    logBufferLines,
+                    logOverflow,
+                    new File(logDirectory, goal + ".overflow.log"));
+        } catch (IllegalArgumentException ex) {
+            throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+        if (spoolOutput) {
+            logAdapter.spoolTo(logDirectory);
+        }
+        exec.setStdout(logAdapter.getStdout());
+        exec.setStderr(logAdapter.getStderr());
+    }
+
+
+    /**
+     * Waits for the output to be logged and, if the goal failed, logs the
+     * end of the output of the failed step.
+     *
+     * @param failed whether the goal failed
+     */
+    protected void closeLogging(boolean failed) {
+        try {
+            logAdapter.close();
+        } catch (IOException ex) {
+            getLog().warn("Failed to write the logs", ex);
+        }
+        if (failed) {
+            logAdapter.reportFailure(FAILURE_CONTEXT_LINES);
+        }
+    }
+
+
+    /**
+     * Returns how to invoke 'make' as configured, joining the shared
+     * jobserver if one is to be used.  Call {@link #leaveJobserver()}
+     * after the last 'make'.
+     *
+     * @param environment the environment of the build
+     * @return the make invocation
+     * @throws IOException if the jobserver can not be joined
+     */
+    protected MakeInvocation makeInvocation(Environment environment)
+    throws IOException {
+        MakeInvocation make =
+            new MakeInvocation(makeJobs, makeLoadAverage, makeOutputSync);
+        if (makeJobserver) {
+            exec.setJobserver(make.joinJobserver(
+                    environment,
+                    makeJobserverMinFreeMemory * 1024L * 1024L,
+                    getLog()));
+        }
+        return make;
+    }
+
+
+    /**
+     * Stops passing the shared jobserver to child processes.
+     */
+    protected void leaveJobserver() {
+        if (makeJobserver) {
+            exec.setJobserver(null);
+        }
+    }
+
+
+    /**
+     * Returns whether the output of child processes bypasses the plugin.
+     *
+     * @return <code>true</code> if the output is redirected to log files
+     */
+    protected boolean isRedirectOutput() {
+        return redirectOutput;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * Passes lines to Maven's logger from a thread of its own, so that child
+ * processes writing output do not wait for a slow console.  Lines are
+ * queued in a bounded buffer; what happens when it is full depends on
+ * the overflow policy.
+ */
+final class AsyncLogSink {
+
+    /**
+     * What to do with a line when the buffer is full.
+     */
+    enum Overflow {
+
+        /** Wait for the buffer to drain. */
+        BLOCK,
+
+        /** Drop info lines, wait with warnings. */
+        DROP_INFO,
+
+        /** Append info lines to a spill file instead, wait with warnings. */
+        SPILL;
+
+
+        /**
+         * Parses a policy as given in the plugin configuration.
+         *
+         * @param name 'block', 'drop-info' or 'spill'
+         * @return the policy
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        static Overflow forName(String name) {
+            if ("block".equals(name)) {
+                return BLOCK;
+            } else if ("drop-info".equals(name)) {
+                return DROP_INFO;
+            } else if ("spill".equals(name)) {
+                return SPILL;
+            }
+            throw new IllegalArgumentException(
+                    "Unknown log overflow policy '" + name + "'");
+        }
+
+    }
+
+
+    /** Ends the drain thread. */
+    private static final Entry END = new Entry(null, null);
+
+    /** */
+    private final Log log;
+
+    /** */
+    private final Overflow overflow;
+
+    /** */
+    private final File spillFile;
+
+    /** */
+    private final BlockingQueue<Entry> queue;
+
+    /** */
+    private final Thread drain;
+
+    /** */
+    private Writer spill;
+
+    /** */
+    private boolean closed;
+
+    /** */
+    private int dropped;
+
+    /** */
+    private int spilled;
+
+
+    /**
+     * Creates a log sink and starts its drain thread.
+     *
+     * @param log the logger
+     * @param capacity the number of lines buffered
+     * @param overflow what to do with a line when the buffer is full
+     * @param spillFile the file receiving info lines that do not fit into
+     *                  the buffer with {@link Overflow#SPILL}
+     */
+    AsyncLogSink(Log log, int capacity, Overflow overflow, File spillFile) {
+        this.log = log;
+        this.overflow = overflow;
+        this.spillFile = spillFile;
+        this.queue = new ArrayBlockingQueue<Entry>(capacity);
+        drain = new Thread("autotools-log") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+
+    /**
+     * Logs a line; once the sink is closed, synchronously.
+     *
+     * @param level the level of the line
+     * @param line the line
+     * @throws IOException if a spilled line can not be written
+     */
+    synchronized void write(LineClassifier.Level level, String line)
+    throws IOException {
+        if (closed) {
+            log(log, level, line);
+            return;
+        }
+        Entry entry = new Entry(level, line);
+        if (queue.offer(entry)) {
+            return;
+        }
+        if (level != LineClassifier.Level.INFO
+                || overflow == Overflow.BLOCK) {
+            // Warnings and errors are never set aside.
+            put(entry);
+        } else if (overflow == Overflow.SPILL) {
+            if (spill == null) {
+                spillFile.getParentFile().mkdirs();
+                spill = new OutputStreamWriter(
+                        new FileOutputStream(spillFile, true), "UTF-8");
+            }
+            spill.write("[INFO] ");
+            spill.write(line);
+            spill.write('\n');
+            ++spilled;
+        } else {
+            ++dropped;
+        }
+    }
+
+
+    /**
+     * Waits until all queued lines have been logged and stops the drain
+     * thread.
+     *
+     * @throws IOException if the spill file can not be closed
+     */
+    synchronized void close()
+    throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        put(END);
+        try {
+            drain.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            log.warn(spilled + " info lines did not fit into the log"
+                     + " buffer and have been written to " + spillFile);
+        }
+        if (dropped > 0) {
+            log.warn(dropped + " lines of output have been dropped"
+                     + " because the log buffer was full");
+        }
+    }
+
+
+    private void put(Entry entry)
+    throws InterruptedIOException {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while logging");
+        }
+    }
+
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (entry == END) {
+                return;
+            }
+            try {
+                log(log, entry.level, entry.line);
+            } catch (RuntimeException ex) {
+                // Keep draining, the child processes must not block.
+            }
+        }
+    }
+
+
+    /**
+     * Logs a line synchronously.
+     *
+     * @param log the logger
+     * @param level the level of the line
+     * @param line the line
+     */
+    static void log(Log log, LineClassifier.Level level, String line) {
+        switch (level) {
+        case INFO:
+            log.info(line);
+            break;
+        case WARN:
+            log.warn(line);
+            break;
+        case ERROR:
+            log.error(line);
+            break;
+        default:
+        }
+    }
+
+
+    /**
+     * A queued line.
+     */
+    private static final class Entry {
+
+        private final LineClassifier.Level level;
+
+        private final String line;
+
+
+        Entry(LineClassifier.Level level, String line) {
+            this.level = level;
+            this.line = line;
+        }
+
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Caches the files generated by the autotools, such as 'configure',
+ * 'Makefile.in' and 'aclocal.m4', keyed by a hash of their inputs: the
+ * autoconf and automake sources, the m4 macros, the commands run and the
+ * versions of the autotools.  Each entry is a zip file; entries are
+ * evicted least recently used first once the cache exceeds its size.
+ */
+final class AutoreconfCache {
+
+    /** Marks executable files in the zip files. */
+    private static final String EXECUTABLE = "x";
+
+    /** The directory autom4te keeps its own cache in. */
+    private static final String AUTOM4TE_CACHE = "autom4te.cache";
+
+    /** The autotools versions, per command querying them. */
+    private static final Map<String, String> versions =
+        new HashMap<String, String>();
+
+    /** */
+    private final File directory;
+
+    /** The size limit in bytes. */
+    private final long maxSize;
+
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory the directory of the zip files
+     * @param maxSize the size limit in bytes
+     */
+    AutoreconfCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * Computes the key of the files the autotools generate.
+     *
+     * @param configureDirectory the directory the autotools run in
+     * @param commands the commands run, without names of temporary files
+     * @param versionCommand the shell command printing the versions of
+     *                       the autotools
+     * @param extraInputs further files the commands read
+     * @return the key or <code>null</code> if the versions are unknown
+     * @throws IOException if an input can not be read
+     */
+    String key(File configureDirectory,
+               List<String> commands,
+               String versionCommand,
+               File... extraInputs)
+    throws IOException {
+        String version = version(versionCommand);
+        if (version == null) {
+            return null;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        update(digest, version.getBytes(StandardCharsets.UTF_8));
+        for (String command : commands) {
+            update(digest, command.getBytes(StandardCharsets.UTF_8));
+        }
+        for (File input : extraInputs) {
+            update(digest, Files.readAllBytes(input.toPath()));
+        }
+        final Path root = configureDirectory.toPath();
+        final Map<String, Path> inputs = new TreeMap<String, Path>();
+        walk(root, new TreeVisitor() {
+            @Override
+            public FileVisitResult visitFile(
+                    Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                // Makefile.am files can include other fragments, which
+                // conventionally end in '.am' or '.mk'.
+                if (name.equals("configure.ac")
+                        || name.equals("configure.in")
+                        || name.endsWith(".am")
+                        || name.endsWith(".mk")
+                        || name.endsWith(".m4")
+                           && !name.equals("aclocal.m4")) {
+                    inputs.put(relativePath(root, file), file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Map.Entry<String, Path> input : inputs.entrySet()) {
+            update(digest, input.getKey().getBytes(StandardCharsets.UTF_8));
+            update(digest, Files.readAllBytes(input.getValue()));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Lists the regular files in a directory with their modification
+     * times and sizes, to find the files the autotools generate.
+     *
+     * @param configureDirectory the directory the autotools run in
+     * @return the files by relative path
+     * @throws IOException if the directory can not be read
+     */
+    static Map<String, String> snapshot(File configureDirectory)
+    throws IOException {
+        final Path root = configureDirectory.toPath();
+        final Map<String, String> files = new TreeMap<String, String>();
+        walk(root, new TreeVisitor() {
+            @Override
+            public FileVisitResult visitFile(
+                    Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(relativePath(root, file),
+                              attrs.lastModifiedTime().toMillis()
+                              + ":" + attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+
+    /**
+     * Restores the generated files of a key, if cached.
+     *
+     * @param key the key
+     * @param configureDirectory the directory the autotools run in
+     * @return whether the files have been restored
+     * @throws IOException if the files can not be restored
+     */
+    boolean restore(String key, File configureDirectory)
+    throws IOException {
+        File entry = new File(directory, key + ".zip");
+        if (!entry.isFile()) {
+            return false;
+        }
+        // Newer than any source, in their original order, so that make
+        // does not run the autotools again.
+        long now = System.currentTimeMillis();
+        ZipFile zip = new ZipFile(entry);
+        try {
+            long newest = 0;
+            for (Enumeration<? extends ZipEntry> e = zip.entries();
+                    e.hasMoreElements();) {
+                newest = Math.max(newest, e.nextElement().getTime());
+            }
+            for (Enumeration<? extends ZipEntry> e = zip.entries();
+                    e.hasMoreElements();) {
+                ZipEntry zipEntry = e.nextElement();
+                File file = new File(configureDirectory, zipEntry.getName());
+                file.getParentFile().mkdirs();
+                // Never write through a link into the sources.
+                Files.deleteIfExists(file.toPath());
+                InputStream in = zip.getInputStream(zipEntry);
+                try {
+                    Files.copy(in, file.toPath());
+                } finally {
+                    in.close();
+                }
+                if (EXECUTABLE.equals(zipEntry.getComment())) {
+                    file.setExecutable(true);
+                }
+                file.setLastModified(now - (newest - zipEntry.getTime()));
+            }
+        } finally {
+            zip.close();
+        }
+        entry.setLastModified(now);
+        return true;
+    }
+
+
+    /**
+     * Stores the files generated since a snapshot under a key and evicts
+     * the least recently used entries exceeding the size limit.
+     *
+     * @param key the key
+     * @param configureDirectory the directory the autotools ran in
+     * @param before the snapshot taken before the autotools ran
+     * @throws IOException if the files can not be stored
+     */
+    void store(String key, File configureDirectory, Map<String, String> before)
+    throws IOException {
+        Map<String, String> after = snapshot(configureDirectory);
+        directory.mkdirs();
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try {
+            ZipOutputStream zip =
+                new ZipOutputStream(new FileOutputStream(temp));
+            try {
+                for (Map.Entry<String, String> file : after.entrySet()) {
+                    if (file.getValue().equals(before.get(file.getKey()))) {
+                        continue;
+                    }
+                    File source = new File(configureDirectory, file.getKey());
+                    ZipEntry zipEntry = new ZipEntry(file.getKey());
+                    zipEntry.setTime(source.lastModified());
+                    if (source.canExecute()) {
+                        zipEntry.setComment(EXECUTABLE);
+                    }
+                    zip.putNextEntry(zipEntry);
+                    InputStream in = new FileInputStream(source);
+                    try {
+                        copy(in, zip);
+                    } finally {
+                        in.close();
+                    }
+                    zip.closeEntry();
+                }
+            } finally {
+                zip.close();
+            }
+            Files.move(temp.toPath(),
+                       new File(directory, key + ".zip").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+        evict(key + ".zip");
+    }
+
+
+    private void evict(String keep) {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (entry.getName().endsWith(".zip")
+                    && !entry.getName().equals(keep)) {
+                long length = entry.length();
+                if (entry.delete()) {
+                    size -= length;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns the output of a command, run once per JVM.
+     *
+     * @return the output or <code>null</code> if the command failed
+     */
+    private static String version(String command) {
+        synchronized (versions) {
+            if (versions.containsKey(command)) {
+                return versions.get(command);
+            }
+            String version = null;
+            try {
+                Process process =
+                    new ProcessBuilder("sh", "-c", command)
+                    .redirectErrorStream(true)
+                    .start();
+                process.getOutputStream().close();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                InputStream in = process.getInputStream();
+                try {
+                    copy(in, out);
+                } finally {
+                    in.close();
+                }
+                if (process.waitFor() == 0) {
+                    version = out.toString("UTF-8");
+                }
+            } catch (IOException ex) {
+                version = null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            versions.put(command, version);
+            return version;
+        }
+    }
+
+
+    /**
+     * Walks a directory tree, following links into the mirrored sources.
+     */
+    private static void walk(Path root, TreeVisitor visitor)
+    throws IOException {
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                           Integer.MAX_VALUE, visitor);
+    }
+
+
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        digest.update(Integer.toString(bytes.length).getBytes(
+                StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+        digest.update(bytes);
+    }
+
+
+    /**
+     * Skips the cache of autom4te, dangling links and link cycles.
+     */
+    private abstract static class TreeVisitor extends SimpleFileVisitor<Path> {
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir,
+                                                 BasicFileAttributes attrs) {
+            return dir.getFileName().toString().equals(AUTOM4TE_CACHE)
+                   ? FileVisitResult.SKIP_SUBTREE
+                   : FileVisitResult.CONTINUE;
+        }
+
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex) {
+            return FileVisitResult.CONTINUE;
+        }
+
+    }
+
+
+    private static void copy(InputStream in, OutputStream out)
+    throws IOException {
+        byte[] buffer = new byte[65536];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Hands configure runs started in the background by the configure goal
+ * over to the compile goal.  Runs still going when the JVM exits are
+ * cancelled, which kills their child processes, and waited for, so that
+ * they do not leave a half-written configuration behind.
+ */
+public final class BackgroundConfigurations {
+
+    /**
+     * Stands in for the build session if a mojo has not been given one.
+     */
+    private static final Object NO_SESSION = new Object();
+
+    /** How long to wait for cancelled runs when the JVM exits. */
+    private static final long SHUTDOWN_TIMEOUT = 30000L;
+
+    /**
+     * The configure runs per build session and configure directory.
+     */
+    private static final Map<Object, Map<String, Future<?>>> running =
+        new WeakHashMap<Object, Map<String, Future<?>>>();
+
+    /** The configure runs that have not finished yet. */
+    private static final Set<Run> unfinished = new HashSet<Run>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                cancelUnfinished(SHUTDOWN_TIMEOUT);
+            }
+        });
+    }
+
+
+    /**
+     * Starts a configure run in the background and registers it.
+     *
+     * @param session the build session, may be <code>null</code>
+     * @param configureDirectory the configure directory
+     * @param configuration the configure run; cancelling it interrupts
+     *                      the thread running it
+     * @return the configure run
+     */
+    public Future<?> start(Object session,
+                           File configureDirectory,
+                           Callable<?> configuration) {
+        Run run = new Run(configuration);
+        synchronized (running) {
+            Object key = session != null ? session : NO_SESSION;
+            Map<String, Future<?>> configurations = running.get(key);
+            if (configurations == null) {
+                configurations = new HashMap<String, Future<?>>();
+                running.put(key, configurations);
+            }
+            configurations.put(configureDirectory.getAbsolutePath(), run);
+            unfinished.add(run);
+        }
+        DefaultProcessExecutor.executeAsync(run);
+        return run;
+    }
+
+
+    /**
+     * Returns and forgets the configure run for a configure directory.
+     *
+     * @param session the build session, may be <code>null</code>
+     * @param configureDirectory the configure directory
+     * @return the configure run or <code>null</code> if there is none
+     */
+    public Future<?> take(Object session, File configureDirectory) {
+        synchronized (running) {
+            Object key = session != null ? session : NO_SESSION;
+            Map<String, Future<?>> configurations = running.get(key);
+            if (configurations == null) {
+                return null;
+            }
+            return configurations.remove(configureDirectory.getAbsolutePath());
+        }
+    }
+
+
+    /**
+     * Cancels the configure runs that have not finished yet and waits for
+     * them to stop.
+     *
+     * @param timeout how long to wait at most, in milliseconds
+     */
+    static void cancelUnfinished(long timeout) {
+        List<Run> runs;
+        synchronized (running) {
+            runs = new ArrayList<Run>(unfinished);
+        }
+        for (Run run : runs) {
+            run.cancel(true);
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            for (Run run : runs) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0
+                        || !run.finished.await(left, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    /**
+     * A configure run that can be waited for even after it has been
+     * cancelled, until the thread running it is done.
+     */
+    private static final class Run
+    extends FutureTask<Object> {
+
+        /** */
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+
+        @SuppressWarnings("unchecked")
+        Run(Callable<?> configuration) {
+            super((Callable<Object>) configuration);
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                synchronized (running) {
+                    unfinished.remove(this);
+                }
+                finished.countDown();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+
+/**
+ * Passes the standard output of a command batch on, taking out the lines
+ * that mark the start of each step and noting when they arrive.
+ */
+class BatchMarkerStream
+extends OutputStream {
+
+    /** Maps bytes to chars one to one. */
+    private static final String LATIN1 = "ISO-8859-1";
+
+    /** */
+    private final String marker = "--autotools-step-" + UUID.randomUUID();
+
+    /** */
+    private final OutputStream out;
+
+    /** The time each step started at, in nanoseconds. */
+    private final long[] starts;
+
+    /** The last step started, or -1. */
+    private volatile int step = -1;
+
+    /** */
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /** Whether the start of the current line has been passed on. */
+    private boolean partial;
+
+
+    /**
+     * Creates a marker stream.
+     *
+     * @param out receives the output without markers
+     * @param steps the number of steps including a final end marker
+     */
+    BatchMarkerStream(OutputStream out, int steps) {
+        this.out = out;
+        this.starts = new long[steps];
+    }
+
+
+    /**
+     * Returns the shell command printing the marker of a step.
+     *
+     * @param step the step
+     * @return the shell command
+     */
+    String markerCommand(int step) {
+        return "echo '" + marker + " " + step + "'";
+    }
+
+
+    /**
+     * Returns the last step started.
+     *
+     * @return the step, or -1 if no marker has been seen
+     */
+    int getStep() {
+        return step;
+    }
+
+
+    /**
+     * Returns the durations of the steps completed.
+     *
+     * @return the durations in milliseconds
+     */
+    long[] getDurations() {
+        int completed = Math.max(step, 0);
+        long[] durations = new long[completed];
+        for (int k = 0; k < completed; ++k) {
+            durations[k] = (starts[k + 1] - starts[k]) / 1000000L;
+        }
+        return durations;
+    }
+
+
+    @Override
+    public synchronized void write(int b)
+    throws IOException {
+        if (b == '\n') {
+            endLine();
+        } else {
+            line.write(b);
+        }
+    }
+
+
+    @Override
+    public synchronized void flush()
+    throws IOException {
+        String text = line.toString(LATIN1);
+        if (!text.contains(marker)) {
+            // Keep back what may be the start of a marker.
+            int keep = Math.min(text.length(), marker.length() - 1);
+            while (keep > 0 && !text.endsWith(marker.substring(0, keep))) {
+                --keep;
+            }
+            byte[] bytes = line.toByteArray();
+            if (keep < bytes.length) {
+                out.write(bytes, 0, bytes.length - keep);
+                partial = true;
+                line.reset();
+                line.write(bytes, bytes.length - keep, keep);
+            }
+        }
+        out.flush();
+    }
+
+
+    private void endLine()
+    throws IOException {
+        String text = line.toString(LATIN1);
+        int index = text.indexOf(marker);
+        if (index < 0) {
+            line.write('\n');
+            line.writeTo(out);
+        } else {
+            if (index > 0 || partial) {
+                out.write(text.substring(0, index).getBytes(LATIN1));
+                out.write('\n');
+            }
+            int started = Integer.parseInt(
+                    text.substring(index + marker.length()).trim());
+            if (started < starts.length) {
+                starts[started] = System.nanoTime();
+                step = started;
+            }
+        }
+        line.reset();
+        partial = false;
+    }
+
+}
@@ -26,6 +26,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 /**
  * @goal pre-clean
  * @phase pre-clean
+ * @threadSafe
  * @description delete all symlinks in the target directory
  */
 public final class CleanMojo
@@ -38,6 +39,14 @@ extends AbstractMojo {
      */
     private File targetDirectory;
 
+    /**
+     * The number of threads that walk the target directory. Zero or less
+     * means one per available processor.
+     *
+     * @parameter expression="${autotools.cleanThreads}" default-value="0"
+     */
+    private int cleanThreads;
+
 
     /**
      * {@inheritDoc}
@@ -46,7 +55,7 @@ extends AbstractMojo {
     public void execute()
     throws MojoExecutionException {
         try {
-            SymlinkUtils.deleteSymlinks(targetDirectory);
+            SymlinkUtils.deleteSymlinks(targetDirectory, cleanThreads);
         } catch (IOException ex) {
             throw new MojoExecutionException("Failed to delete symlinks", ex);
         }
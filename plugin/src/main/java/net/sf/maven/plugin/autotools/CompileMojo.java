@@ -30,6 +30,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +39,10 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -48,7 +54,6 @@ import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.IOUtil;
@@ -59,10 +64,27 @@ import org.codehaus.plexus.util.StringUtils;
 /**
  * @goal compile
  * @phase compile
+ * @threadSafe
  * @description run 'configure', 'make', and 'make install'
  */
-public final class CompileMojo
-extends AbstractMojo {
+public class CompileMojo
+extends AbstractMakeMojo {
+
+    private static final String STAGING_SYMLINK = "symlink";
+
+    private static final String STAGING_VPATH = "vpath";
+
+    private static final String STAGING_HARDLINK = "hardlink";
+
+    private static final String STAGING_REFLINK = "reflink";
+
+    /** The private cache file of configure, in the working directory. */
+    private static final String CONFIG_CACHE = "config.cache";
+
+    /** Prints the versions of the autotools, part of the cache keys. */
+    private static final String AUTOTOOLS_VERSIONS =
+        "autoconf --version && automake --version"
+        + " && { " + command("libtoolize") + " --version || :; }";
 
     /**
      * The dependencies directory.
@@ -175,6 +197,67 @@ extends AbstractMojo {
      */
     private boolean autoreconf;
 
+    /**
+     * Set 'true' to keep the files generated by the autotools, such as
+     * 'configure' and 'Makefile.in', in {@link #autoreconfCacheDirectory},
+     * keyed by a hash of their inputs and the autotools versions, and to
+     * restore them instead of running the autotools again.
+     *
+     * @parameter expression="${autotools.autoreconfCache}" default-value="true"
+     */
+    private boolean autoreconfCache;
+
+    /**
+     * The directory of the cached autotools output. Defaults to
+     * '.cache/autotools/autoreconf' in the local repository.
+     *
+     * @parameter expression="${autotools.autoreconfCacheDirectory}"
+     */
+    private File autoreconfCacheDirectory;
+
+    /**
+     * The size in megabytes above which the least recently used autotools
+     * output is removed from {@link #autoreconfCacheDirectory}.
+     *
+     * @parameter expression="${autotools.autoreconfCacheSize}" default-value="512"
+     */
+    private int autoreconfCacheSize;
+
+    /**
+     * The file recording the links that mirror the source directories
+     * into the build directories. Later builds only add links for new
+     * files and remove links for deleted ones.
+     *
+     * @parameter expression="${project.build.directory}/autotools/staging.manifest"
+     */
+    private File stagingManifest;
+
+    /**
+     * How the source directories are staged for the build. With 'symlink'
+     * every source file is linked into the configure directory and, for
+     * projects not using automake, into the working directory as well.
+     * With 'vpath' only the top level entries of the native source
+     * directory are linked into the configure directory, so that the
+     * build finds the real sources through $(srcdir); this requires build
+     * scripts that support building outside of the source directory.
+     * 'hardlink' and 'reflink' stage like 'symlink', but with hard links
+     * or copy-on-write clones of the source files, whose timestamps
+     * behave like those of regular files; source files for which these
+     * can not be created, e.g. because the build directory is on another
+     * file system, are linked symbolically.
+     *
+     * @parameter expression="${autotools.stagingMode}" default-value="symlink"
+     */
+    private String stagingMode;
+
+    /**
+     * The number of threads that mirror the source directories into the
+     * build directories. Zero or less means one per available processor.
+     *
+     * @parameter expression="${autotools.stagingThreads}" default-value="0"
+     */
+    private int stagingThreads;
+
     /**
      * Additional parameters to pass to the ./configure script. Can't use --bindir, --libdir or --includedir.
      *
@@ -204,6 +287,48 @@ extends AbstractMojo {
      */
     private Map<String,String> platformMapping;
 
+    /**
+     * Set 'true' to share the results of configure tests between the
+     * modules of a build through a cache file in
+     * {@link #configureCacheDirectory}. Modules share a cache if they
+     * use the same compilers, flags and host; results that the headers
+     * and libraries of their dependencies can change are only shared
+     * between modules with the same dependencies. Ignored if
+     * configureArgs names a cache file itself.
+     *
+     * @parameter expression="${autotools.configureCache}" default-value="true"
+     */
+    private boolean configureCache;
+
+    /**
+     * The directory of the configure caches shared by the modules of a
+     * build.
+     *
+     * @parameter expression="${session.executionRootDirectory}/target/autotools/config-cache"
+     */
+    private File configureCacheDirectory;
+
+    /**
+     * Set 'true' to keep the toolchain results of configure runs, such as
+     * compiler characteristics and available headers and functions, per
+     * machine and compiler in {@link #toolchainCacheDirectory}, and to
+     * preseed configure with them through CONFIG_SITE. Ignored if
+     * CONFIG_SITE is set already.
+     * Only a new or updated compiler starts a new cache, so headers and
+     * libraries removed from the system are still taken to be there;
+     * delete {@link #toolchainCacheDirectory} after such changes.
+     *
+     * @parameter expression="${autotools.toolchainCache}" default-value="false"
+     */
+    private boolean toolchainCache;
+
+    /**
+     * The directory of the machine-wide toolchain caches.
+     *
+     * @parameter expression="${user.home}/.m2/autotools/toolchains"
+     */
+    private File toolchainCacheDirectory;
+
     /**
      * Additional environment variables to set before running configure.
      *
@@ -212,9 +337,36 @@ extends AbstractMojo {
     private Map<String,String> configureEnv;
 
     /**
-     * Used to run child processes.
+     * The report of the gcc, clang and libtool warnings and errors per
+     * file and category, written by each run of this goal.
+     *
+     * @parameter expression="${project.build.directory}/autotools/diagnostics.xml"
      */
-    private ProcessExecutor exec = new DefaultProcessExecutor();
+    private File diagnosticsReport;
+
+    /**
+     * Set 'true' to run the autotools bootstrap, such as aclocal and
+     * automake, and the per-directory copies of stagingMode 'reflink' in
+     * long-lived shells instead of a new shell process each. 'configure'
+     * and 'make' always get processes of their own.
+     *
+     * @parameter expression="${autotools.shellCoprocess}" default-value="false"
+     */
+    private boolean shellCoprocess;
+
+    /**
+     * Used to run the short autotools steps.
+     */
+    private ProcessExecutor helperExec;
+
+    /**
+     * The build session; typed as Object so that the plugin does not
+     * depend on maven-core.
+     *
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private Object session;
 
     /**
      * Used to avoid running this mojo multiple times with exactly the
@@ -222,6 +374,27 @@ extends AbstractMojo {
      */
     private RepeatedExecutions repeated = new RepeatedExecutions();
 
+    /**
+     * Used to join a configure run started by the configure goal.
+     */
+    private BackgroundConfigurations background =
+        new BackgroundConfigurations();
+
+    /**
+     * The toolchain cache of the compiler configure runs with, if any.
+     */
+    private ToolchainCache toolchain;
+
+    /**
+     * The environment with this execution's platform mapping applied.
+     */
+    private Environment environment;
+
+    /**
+     * The symlinks resolved during this execution.
+     */
+    private ResolvedSymlinks symlinks;
+
     /**
      * Postfix for generated scripts.
      *
@@ -235,25 +408,109 @@ extends AbstractMojo {
      */
     public void execute()
     throws MojoExecutionException {
-        if (repeated.alreadyRun(getClass().getName(),
-                                nativeMainDirectory,
-                                autotoolsMainDirectory,
-                                installDirectory,
-                                workingDirectory,
-                                configureDirectory,
-                                dependenciesDirectory)) {
+        if (alreadyRun()) {
+            getLog().info("Skipping repeated execution");
+            return;
+        }
+        initExecution();
+        boolean failed = true;
+        try {
+            Future<?> configuration =
+                background.take(session, configureDirectory);
+            if (configuration != null) {
+                joinConfiguration(configuration);
+                // Does nothing if the configure goal ran with the same
+                // configuration as this execution.
+                configure(false);
+            } else {
+                prepareBuild();
+                configure(true);
+            }
+            make();
+            postInstall();
+            failed = false;
+        } finally {
+            closeLogging(failed);
+            writeDiagnostics();
+        }
+    }
+
+
+    /**
+     * Prepares the build directories and starts 'configure' in the
+     * background, to be joined by the compile goal of the same build.
+     *
+     * @throws MojoExecutionException if the build directories can not be
+     *                                prepared
+     */
+    protected void startConfiguration()
+    throws MojoExecutionException {
+        if (alreadyRun()) {
             getLog().info("Skipping repeated execution");
             return;
         }
-        Environment environment = Environment.getEnvironment();
-        if (platformMapping != null) {
-            environment.applyPlatformMapping(platformMapping);
+        initExecution();
+        try {
+            prepareBuild();
+        } catch (MojoExecutionException ex) {
+            closeLogging(true);
+            throw ex;
         }
+        background.start(session, configureDirectory, new Callable<Void>() {
+            public Void call()
+            throws MojoExecutionException {
+                boolean failed = true;
+                try {
+                    configure(true);
+                    failed = false;
+                } finally {
+                    closeLogging(failed);
+                }
+                return null;
+            }
+        });
+    }
+
+
+    private boolean alreadyRun() {
+        return repeated.alreadyRun(session,
+                                   getClass().getName(),
+                                   nativeMainDirectory,
+                                   autotoolsMainDirectory,
+                                   installDirectory,
+                                   workingDirectory,
+                                   configureDirectory,
+                                   dependenciesDirectory);
+    }
+
+
+    private void initExecution()
+    throws MojoExecutionException {
+        environment =
+            Environment.getEnvironment().withPlatformMapping(platformMapping);
+        symlinks = new ResolvedSymlinks();
         initLogging();
-        prepareBuild();
-        configure();
-        make();
-        postInstall();
+    }
+
+
+    private void joinConfiguration(Future<?> configuration)
+    throws MojoExecutionException {
+        try {
+            configuration.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) ex.getCause();
+            }
+            throw new MojoExecutionException(
+                    "Failed to configure in the background", ex.getCause());
+        } catch (CancellationException ex) {
+            throw new MojoExecutionException(
+                    "The background configure run was cancelled", ex);
+        } catch (InterruptedException ex) {
+            configuration.cancel(true);
+            throw new MojoExecutionException(
+                    "Interrupted while waiting for configure", ex);
+        }
     }
 
 
@@ -263,16 +520,35 @@ extends AbstractMojo {
             configureDirectory.mkdirs();
             workingDirectory.mkdirs();
             installDirectory.mkdirs();
-            makeSymlinks(autotoolsMainDirectory, configureDirectory);
-            makeSymlinks(nativeMainDirectory, configureDirectory);
+            SourceMirror mirror =
+                new SourceMirror(stagingManifest, stagingThreads, linkKind());
+            if (shellCoprocess) {
+                mirror.setCopier(new CoprocessExecutor());
+            }
+            mirror.mirror(autotoolsMainDirectory, configureDirectory);
+            boolean vpath = STAGING_VPATH.equals(stagingMode);
+            if (vpath) {
+                mirror.mirrorTopLevel(nativeMainDirectory, configureDirectory);
+            } else {
+                mirror.mirror(nativeMainDirectory, configureDirectory);
+            }
+            symlinks.addStagedFiles(mirror.getStagedFiles());
             makeM4Directory();
             writeM4Macros();
-            if (!FileUtils.fileExists(configureDirectory, "Makefile.am")) {
+            if (!vpath
+                    && !symlinks.fileExists(configureDirectory, "Makefile.am")) {
                 // If not produced by automake, it is highly probable that the
                 // make script can not deal with source files in a neighboring
                 // directory.  To play it safe, we link the source files into
                 // the working directory as well.
-                makeSymlinks(nativeMainDirectory, workingDirectory);
+                mirror.mirror(nativeMainDirectory, workingDirectory);
+                symlinks.addStagedFiles(mirror.getStagedFiles());
+            }
+            mirror.finish();
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Created " + mirror.getCreatedLinks()
+                               + " and removed " + mirror.getRemovedLinks()
+                               + " source links");
             }
         } catch (IOException ex) {
             throw new MojoExecutionException(
@@ -285,24 +561,41 @@ extends AbstractMojo {
     }
 
 
+    private SourceMirror.LinkKind linkKind()
+    throws MojoExecutionException {
+        if (stagingMode == null || STAGING_SYMLINK.equals(stagingMode)
+                || STAGING_VPATH.equals(stagingMode)) {
+            return SourceMirror.LinkKind.SYMBOLIC;
+        } else if (STAGING_HARDLINK.equals(stagingMode)) {
+            return SourceMirror.LinkKind.HARD;
+        } else if (STAGING_REFLINK.equals(stagingMode)) {
+            return SourceMirror.LinkKind.REFLINK;
+        }
+        throw new MojoExecutionException(
+                "Unknown staging mode '" + stagingMode + "'");
+    }
+
+
     private void makeM4Directory() {
-        if (!FileUtils.fileExists(configureDirectory, macroDirectoryName)) {
+        if (!symlinks.fileExists(configureDirectory, macroDirectoryName)) {
             new File(configureDirectory, macroDirectoryName).mkdir();
         }
     }
 
 
-    private void configure()
+    /**
+     * Runs 'configure' unless the working directory is configured the
+     * way this execution asks for already.
+     *
+     * @param bootstrap whether to run the autotools bootstrap first
+     */
+    private void configure(boolean bootstrap)
     throws MojoExecutionException {
-        if (FileUtils.fileExists(configureDirectory, "Makefile")
-            && !FileUtils.isOlderThanAnyOf(configureDirectory, "Makefile",
-                                           "Makefile.in", "Makefile.am")) {
-            // No need to run configure since there is an up-to-date makefile.
-            return;
-        }
         String configurePath = "configure";
         try {
-            autoconf();
+            if (bootstrap) {
+                autoconf();
+            }
             File configureScript =
                 new File(configureDirectory, configurePath);
             if (!configureScript.canExecute()) {
@@ -325,30 +618,65 @@ extends AbstractMojo {
                 + FileUtils.fixAbsolutePathForUnixShell(libDirectory) + "\""
                 + " --includedir=\""
                 + FileUtils.fixAbsolutePathForUnixShell(includeDirectory) + "\"";
-            if (Boolean.valueOf(mingw)) {
-                Environment environment = Environment.getEnvironment();
-                if (environment.isWindows()) {
-                    if (environment.isX86_64()) {
-                        configure += " --host=x86_64-w64-mingw32";
-                    } else {
-                        configure += " --host=i686-w64-mingw32";
-                    }
-                }
+            String mingwHost = mingwHost();
+            if (mingwHost != null) {
+                configure += " --host=" + mingwHost;
             }
             if (!StringUtils.isEmpty(configureArgs)) {
                 configure += " " + configureArgs;
             }
+            Map<String,String> env = makeConfigureEnvironment();
+            ConfigureCache cache = sharedConfigureCache();
+            if (cache != null) {
+                configure += " --cache-file=" + CONFIG_CACHE;
+            }
             String[] configureCommand = {
                     "sh", "-c", configure
             };
+            ConfigureState state =
+                new ConfigureState(workingDirectory, configureDirectory);
+            Collection<String> variables = configureEnv != null
+                ? configureEnv.keySet() : Collections.<String>emptySet();
+            String fingerprint = state.fingerprint(configure, env, variables);
+            ConfigureState.Action action = state.check(fingerprint);
+            if (action == ConfigureState.Action.NONE) {
+                getLog().info("Configuration is up to date");
+                return;
+            }
+            if (action == ConfigureState.Action.CONFIG_STATUS) {
+                configurePath = "config.status";
+                configureCommand = new String[] {
+                        "sh", "-c",
+                        "./config.status" + (verbose ? "" : " --quiet")
+                };
+                cache = null;
+            }
+            File privateCache = new File(workingDirectory, CONFIG_CACHE);
+            if (cache != null) {
+                cache.restore(privateCache);
+            }
             if (verbose && getLog().isInfoEnabled()) {
                 getLog().info("cd '" + workingDirectory + "'");
                 getLog().info(Arrays.toString(configureCommand));
             }
+            state.invalidate();
+            logAdapter.startStep("configure");
             exec.execProcess(
                     configureCommand,
-                    makeConfigureEnvironment(),
+                    env,
                     workingDirectory);
+            state.store(fingerprint);
+            if (cache != null) {
+                cache.publish(privateCache);
+            }
+            if (toolchain != null
+                    && action == ConfigureState.Action.CONFIGURE) {
+                toolchain.harvest(
+                        new File(workingDirectory, "config.log"),
+                        ConfigureCache.dependencies(
+                                dependencyIncludeDirectory(),
+                                dependencyLibraryDirectory()) != null);
+            }
         } catch (Exception ex) {
             throw new MojoExecutionException("Failed to run '"
                                              + configurePath + "'"
@@ -359,24 +687,113 @@ extends AbstractMojo {
     }
 
 
+    /**
+     * Returns the configure cache shared with the other modules of the
+     * build, or <code>null</code> if results are not shared.  The key
+     * leaves out the dependency paths this module adds to the flags,
+     * which differ from module to module; the results depending on them
+     * are kept per set of dependencies instead.
+     */
+    ConfigureCache sharedConfigureCache()
+    throws IOException {
+        if (!configureCache || configureCacheDirectory == null) {
+            return null;
+        }
+        if (configureArgs != null
+                && (configureArgs.contains("--cache-file")
+                    || configureArgs.matches(
+                           "(.*\\s)?(-C|--config-cache)(\\s.*)?"))) {
+            return null;
+        }
+        return new ConfigureCache(
+                configureCacheDirectory,
+                ConfigureCache.key(ownConfigureEnvironment(),
+                                   platform(), host()),
+                ConfigureCache.dependencies(dependencyIncludeDirectory(),
+                                            dependencyLibraryDirectory()));
+    }
+
+
+    private AutoreconfCache autoreconfCache() {
+        File directory = autoreconfCacheDirectory();
+        if (!autoreconfCache || directory == null) {
+            return null;
+        }
+        return new AutoreconfCache(directory,
+                                   autoreconfCacheSize * 1024L * 1024L);
+    }
+
+
+    private File autoreconfCacheDirectory() {
+        if (autoreconfCacheDirectory == null && localRepository != null) {
+            return new File(localRepository.getBasedir(),
+                            ".cache/autotools/autoreconf");
+        }
+        return autoreconfCacheDirectory;
+    }
+
+
+    /**
+     * Returns the host argument of configure for MinGW builds, or
+     * <code>null</code>.
+     */
+    private String mingwHost() {
+        if (Boolean.valueOf(mingw) && environment.isWindows()) {
+            return environment.isX86_64()
+                   ? "x86_64-w64-mingw32" : "i686-w64-mingw32";
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the host configure builds for if it is not the build
+     * machine, or <code>null</code>.
+     */
+    private String host() {
+        if (configureArgs != null) {
+            Matcher host =
+                Pattern.compile("--host=(\\S+)").matcher(configureArgs);
+            if (host.find()) {
+                return host.group(1);
+            }
+        }
+        return mingwHost();
+    }
+
+
+    private String platform() {
+        return environment.getSystemArchitecture() + "/"
+               + environment.getOperatingSystem();
+    }
+
+
     private void make()
     throws MojoExecutionException {
         try {
+            MakeInvocation make = makeInvocation(environment);
             String[] makeCommand = {
-                    "sh", "-c", "make"
+                    "sh", "-c", make.command()
             };
+            if (verbose && getLog().isInfoEnabled()) {
+                getLog().info(Arrays.toString(makeCommand));
+            }
+            logAdapter.startStep("make");
             exec.execProcess(makeCommand,
                              null,
                              workingDirectory);
             String[] makeInstallCommand = {
-                    "sh", "-c", "make install"
+                    "sh", "-c", make.command("install")
             };
+            logAdapter.startStep("install");
             exec.execProcess(makeInstallCommand,
                              null,
                              workingDirectory);
             moveDLLsToLibDirectory();
         } catch (Exception ex) {
             throw new MojoExecutionException("Failed to run \"make\"", ex);
+        } finally {
+            leaveJobserver();
         }
     }
 
@@ -391,6 +808,7 @@ extends AbstractMojo {
             String[] postInstallCommand = {
                     "sh", postInstallScript.getAbsolutePath()
             };
+            logAdapter.startStep("postinstall");
             exec.execProcess(postInstallCommand,
                              null,
                              installDirectory);
@@ -407,7 +825,6 @@ extends AbstractMojo {
      */
     private void moveDLLsToLibDirectory()
     throws IOException {
-        Environment environment = Environment.getEnvironment();
         if (environment.isWindows()) {
             File libraries = new File(installDirectory, "lib");
             File libDirectory = makeOsArchDirectory(libraries);
@@ -431,15 +848,15 @@ extends AbstractMojo {
         List<String> commands = new ArrayList<String>();
         File autoscanPost = null;
         try {
-            if (!FileUtils.fileExists(configureDirectory, "configure.ac")
-                  && !FileUtils.fileExists(configureDirectory, "configure.in")
-                  && !FileUtils.fileExists(configureDirectory, "Makefile.in")) {
+            if (!symlinks.fileExists(configureDirectory, "configure.ac")
+                  && !symlinks.fileExists(configureDirectory, "configure.in")
+                  && !symlinks.fileExists(configureDirectory, "Makefile.in")) {
                 commands.add("autoscan");
                 autoscanPost = extractAutoscanScript("autoscan-post");
                 commands.add("./" + autoscanPost.getName());
             }
-            if (!FileUtils.fileExists(configureDirectory, "configure.in")
-                  && !FileUtils.fileExists(configureDirectory, "Makefile.in")) {
+            if (!symlinks.fileExists(configureDirectory, "configure.in")
+                  && !symlinks.fileExists(configureDirectory, "Makefile.in")) {
                 if (!autoreconf) {
                         commands.add("aclocal");
                         commands.add("autoheader");
@@ -452,27 +869,53 @@ extends AbstractMojo {
                 createEmptyIfDoesNotExist(configureDirectory, "ChangeLog");
                 createEmptyIfDoesNotExist(configureDirectory, "COPYING");
             }
-            if (!FileUtils.fileExists(configureDirectory, "configure")) {
+            if (!symlinks.fileExists(configureDirectory, "configure")) {
                 if (autoreconf) {
                     commands.add("autoreconf --install" + (verbose ? " --verbose" : ""));
                 } else {
                     commands.add("autoconf");
                 }
             }
+            if (commands.isEmpty()) {
+                return;
+            }
             if (verbose && getLog().isInfoEnabled()) {
                 getLog().info("cd '" + configureDirectory + "'");
+                for (String command : commands) {
+                    getLog().info(command);
+                }
             }
-            for (String command : commands) {
-                String[] shellCommand = {
-                        "sh", "-c", command
-                };
-                if (verbose && getLog().isInfoEnabled()) {
-                    getLog().info(Arrays.toString(shellCommand));
+            AutoreconfCache cache = autoreconfCache();
+            String key = null;
+            if (cache != null) {
+                List<String> keyCommands = new ArrayList<String>(commands);
+                if (autoscanPost != null) {
+                    keyCommands.remove("./" + autoscanPost.getName());
+                    key = cache.key(configureDirectory, keyCommands,
+                                    AUTOTOOLS_VERSIONS, autoscanPost);
+                } else {
+                    key = cache.key(configureDirectory, keyCommands,
+                                    AUTOTOOLS_VERSIONS);
+                }
+                if (key != null && cache.restore(key, configureDirectory)) {
+                    getLog().info("Restored autotools output " + key
+                                  + " from " + autoreconfCacheDirectory());
+                    return;
+                }
+            }
+            Map<String, String> before = key == null
+                ? null : AutoreconfCache.snapshot(configureDirectory);
+            logAdapter.startStep("autoconf");
+            long[] durations =
+                helperExec.execBatch(commands, null, configureDirectory);
+            if (getLog().isDebugEnabled()) {
+                for (int k = 0; k < durations.length; ++k) {
+                    getLog().debug("'" + commands.get(k) + "' took "
+                                   + durations[k] + " ms");
                 }
-                exec.execProcess(
-                        shellCommand,
-                        null,
-                        configureDirectory);
+            }
+            if (before != null) {
+                cache.store(key, configureDirectory, before);
             }
         } finally {
             if (autoscanPost != null) {
@@ -546,21 +989,54 @@ extends AbstractMojo {
      */
     private Map<String,String> makeConfigureEnvironment()
     throws IOException {
-        File includes = new File(dependenciesDirectory, "include");
-        File libraries = new File(dependenciesDirectory, "lib");
-        libraries = makeOsArchDirectory(libraries);
+        Map<String,String> env = ownConfigureEnvironment();
+        mergeEnvVar(env, "CFLAGS", "-I"
+                         + FileUtils.fixAbsolutePathForUnixShell(
+                               dependencyIncludeDirectory()));
+        mergeEnvVar(env, "LDFLAGS", "-L"
+                         + FileUtils.fixAbsolutePathForUnixShell(
+                               dependencyLibraryDirectory()));
+        toolchain = null;
+        if (toolchainCache && toolchainCacheDirectory != null
+                && !env.containsKey("CONFIG_SITE")) {
+            // The dependency paths added above are left out of the key;
+            // the results they can affect are only harvested from runs
+            // without dependencies.
+            toolchain = ToolchainCache.forCompiler(
+                    toolchainCacheDirectory, ownConfigureEnvironment(),
+                    platform(), host());
+            if (toolchain != null) {
+                env.put("CONFIG_SITE", FileUtils.fixAbsolutePathForUnixShell(
+                        toolchain.getSiteFile()));
+            }
+        }
+        return env;
+    }
+
+
+    /**
+     * Returns the environment of configure as configured, without the
+     * dependency paths added to the flags.
+     */
+    private Map<String,String> ownConfigureEnvironment() {
         Map<String,String> env = new HashMap<String,String>(System.getenv());
         if (configureEnv != null) {
             env.putAll(configureEnv);
         }
-        mergeEnvVar(env, "CFLAGS", "-I"
-                         + FileUtils.fixAbsolutePathForUnixShell(includes));
-        mergeEnvVar(env, "LDFLAGS", "-L"
-                         + FileUtils.fixAbsolutePathForUnixShell(libraries));
         return env;
     }
 
 
+    private File dependencyIncludeDirectory() {
+        return new File(dependenciesDirectory, "include");
+    }
+
+
+    private File dependencyLibraryDirectory() {
+        return makeOsArchDirectory(new File(dependenciesDirectory, "lib"));
+    }
+
+
     /**
      * Appends system architecture and operating system name to
      * a given path.
@@ -569,7 +1045,6 @@ extends AbstractMojo {
      * @return the directory with architecture and os appended
      */
     private File makeOsArchDirectory(File directory) {
-        Environment environment = Environment.getEnvironment();
         String arch = environment.getSystemArchitecture();
         String os = environment.getOperatingSystem();
         File archDirectory = new File(directory, arch);
@@ -578,32 +1053,6 @@ extends AbstractMojo {
     }
 
 
-    private void makeSymlinks(File sourceDirectory, File destinationDirectory)
-    throws IOException {
-        if (sourceDirectory == null) {
-            return;
-        }
-        File[] files = sourceDirectory.listFiles();
-        if (files == null) {
-            return;
-        }
-        for (File file : files) {
-            if (file.getName().startsWith(".")) {
-                continue; // TODO: this might be to broad
-            }
-            if (file.isDirectory()) {
-                File childDestinationDirectory =
-                      new File(destinationDirectory, file.getName());
-                childDestinationDirectory.mkdir();
-                makeSymlinks(file, childDestinationDirectory);
-            } else if (file.isFile()) {
-                File link = new File(destinationDirectory, file.getName());
-                SymlinkUtils.createSymlink(link, file, true);
-            }
-        }
-    }
-
-
     private void createEmptyIfDoesNotExist(File directory, String name)
     throws IOException {
         File file = new File(directory, name);
@@ -617,14 +1066,13 @@ extends AbstractMojo {
     throws IOException,
            ArtifactResolutionException,
            ArtifactNotFoundException {
-        if (FileUtils.fileExists(configureDirectory, "acinclude.m4")
-                || !FileUtils.fileExists(configureDirectory, "configure.ac")) {
+        if (symlinks.fileExists(configureDirectory, "acinclude.m4")
+                || !symlinks.fileExists(configureDirectory, "configure.ac")) {
             return;
         }
         List<Artifact> macroArtifacts = resolveDependencies(macroDependencies);
         File configure =
-            SymlinkUtils.resolveSymlink(
-                    new File(configureDirectory, "configure.ac"));
+            symlinks.resolve(new File(configureDirectory, "configure.ac"));
         BufferedReader reader =
             new BufferedReader(
                     new InputStreamReader(
@@ -734,10 +1182,30 @@ extends AbstractMojo {
     }
 
 
-    private void initLogging() {
-        StreamLogAdapter sla = new StreamLogAdapter(getLog());
-        exec.setStdout(sla.getStdout());
-        exec.setStderr(sla.getStderr());
+    private void initLogging()
+    throws MojoExecutionException {
+        initLogging("compile");
+        if (diagnosticsReport != null && !isRedirectOutput()) {
+            logAdapter.collectDiagnostics();
+        }
+        helperExec = exec;
+        if (shellCoprocess) {
+            helperExec = new CoprocessExecutor();
+            helperExec.setStdout(logAdapter.getStdout());
+            helperExec.setStderr(logAdapter.getStderr());
+        }
+    }
+
+
+    private void writeDiagnostics() {
+        if (diagnosticsReport == null || isRedirectOutput()) {
+            return;
+        }
+        try {
+            logAdapter.writeDiagnostics(diagnosticsReport);
+        } catch (IOException ex) {
+            getLog().warn("Failed to write " + diagnosticsReport, ex);
+        }
     }
 
 
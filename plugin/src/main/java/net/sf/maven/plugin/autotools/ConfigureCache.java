@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * An autoconf cache file shared by the configure runs of several modules.
+ * Each run works on a private copy, passed with '--cache-file', which is
+ * merged back after the run succeeded.  Copying and merging lock the
+ * shared file against other threads and other processes.
+ * <p>
+ * A cache can be split by the dependencies of the modules: results that
+ * the include and library paths of the dependencies can change are then
+ * kept in a file of their own per set of dependencies, and the others
+ * are shared by all modules.
+ */
+final class ConfigureCache {
+
+    /** The variables making up the key of a cache. */
+    private static final String[] KEY_VARIABLES = {
+        "CC", "CFLAGS", "CPPFLAGS", "CXX", "CXXFLAGS", "LDFLAGS", "LIBS"
+    };
+
+    /**
+     * Results that do not depend on the include and library paths of a
+     * module's dependencies.
+     */
+    private static final String[] INDEPENDENT_PREFIXES = {
+        "ac_cv_sizeof_", "ac_cv_alignof_", "ac_cv_c_", "ac_cv_prog_",
+        "ac_cv_path_", "ac_cv_objext", "ac_cv_exeext", "ac_cv_build",
+        "ac_cv_host", "lt_cv_", "am_cv_"
+    };
+
+    /**
+     * The precious variables of a run, which configure insists on finding
+     * unchanged in the cache; never shared.
+     */
+    private static final String ENV_PREFIX = "ac_cv_env_";
+
+    /** The monitors guarding the caches against other threads. */
+    private static final Map<String, Object> monitors =
+        new HashMap<String, Object>();
+
+    /** */
+    private final File cache;
+
+    /**
+     * The cache of the results depending on the dependencies, or
+     * <code>null</code> if the cache is not split.
+     */
+    private final File dependentCache;
+
+    /** */
+    private final File lock;
+
+
+    /**
+     * Creates a shared cache.
+     *
+     * @param directory the directory of the shared caches
+     * @param key the key of the cache, see {@link #key}
+     */
+    ConfigureCache(File directory, String key) {
+        this.cache = new File(directory, key + ".cache");
+        this.dependentCache = null;
+        this.lock = new File(directory, key + ".lock");
+    }
+
+
+    /**
+     * Creates a shared cache split by dependencies.
+     *
+     * @param directory the directory of the shared caches
+     * @param key the key of the cache, see {@link #key}
+     * @param dependencies the dependencies of the module, see
+     *                     {@link #dependencies}
+     */
+    ConfigureCache(File directory, String key, String dependencies) {
+        this.cache = new File(directory, key + ".cache");
+        this.dependentCache = new File(
+                directory,
+                key + "-" + (dependencies != null ? dependencies : "none")
+                + ".cache");
+        this.lock = new File(directory, key + ".lock");
+    }
+
+
+    /**
+     * Returns the shared cache file.
+     *
+     * @return the cache file, which may not exist yet
+     */
+    File getFile() {
+        return cache;
+    }
+
+
+    /**
+     * Returns the key of the cache for a compiler configuration, so that
+     * configure runs for different compilers, flags or hosts do not see
+     * each other's results.
+     *
+     * @param env the environment of configure
+     * @param platform the operating system and architecture
+     * @param host the '--host' argument of configure or <code>null</code>
+     * @return the key
+     */
+    static String key(Map<String, String> env, String platform, String host) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(platform).append('\0').append(host).append('\0');
+        for (String name : KEY_VARIABLES) {
+            sb.append(name).append('=').append(env.get(name)).append('\0');
+        }
+        return hash(sb.toString());
+    }
+
+
+    /**
+     * Returns a fingerprint of the files of a module's dependencies, so
+     * that modules with the same dependencies share the results that
+     * depend on them, wherever the dependencies have been unpacked to.
+     *
+     * @param directories the include and library directories of the
+     *                    dependencies
+     * @return the fingerprint or <code>null</code> if the directories
+     *         hold no files
+     * @throws IOException if the directories can not be read
+     */
+    static String dependencies(File... directories)
+    throws IOException {
+        final List<String> files = new ArrayList<String>();
+        for (final File directory : directories) {
+            if (!directory.isDirectory()) {
+                continue;
+            }
+            final Path root = directory.toPath();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    files.add(directory.getName() + "/"
+                              + root.relativize(file).toString()
+                                    .replace(File.separatorChar, '/')
+                              + "\0" + attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        Collections.sort(files);
+        StringBuilder sb = new StringBuilder();
+        for (String file : files) {
+            sb.append(file).append('\0');
+        }
+        return hash(sb.toString());
+    }
+
+
+    /**
+     * Tells whether the include and library paths of a module's
+     * dependencies can change a result.
+     *
+     * @param name the name of the cache variable
+     * @return whether the result depends on the dependencies
+     */
+    static boolean dependsOnDependencies(String name) {
+        for (String prefix : INDEPENDENT_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Copies the shared cache to the private cache of a configure run.
+     *
+     * @param privateCache the cache file passed to configure
+     * @throws IOException if the cache can not be copied
+     */
+    void restore(File privateCache)
+    throws IOException {
+        synchronized (monitor()) {
+            FileLock fileLock = lock();
+            try {
+                Map<String, String> entries = new TreeMap<String, String>();
+                if (cache.isFile()) {
+                    read(cache, entries);
+                }
+                if (dependentCache != null && dependentCache.isFile()) {
+                    read(dependentCache, entries);
+                }
+                if (entries.isEmpty()) {
+                    privateCache.delete();
+                } else {
+                    write(privateCache, entries);
+                }
+            } finally {
+                fileLock.channel().close();
+            }
+        }
+    }
+
+
+    /**
+     * Merges the results of a successful configure run into the shared
+     * cache.  The precious variables of the run are left out.
+     *
+     * @param privateCache the cache file passed to configure
+     * @throws IOException if the cache can not be written
+     */
+    void publish(File privateCache)
+    throws IOException {
+        if (!privateCache.isFile()) {
+            return;
+        }
+        synchronized (monitor()) {
+            FileLock fileLock = lock();
+            try {
+                Map<String, String> results = new TreeMap<String, String>();
+                read(privateCache, results);
+                Map<String, String> shared = new TreeMap<String, String>();
+                Map<String, String> dependent =
+                    new TreeMap<String, String>();
+                for (Map.Entry<String, String> result : results.entrySet()) {
+                    String name = result.getKey();
+                    if (name.startsWith(ENV_PREFIX)) {
+                        continue;
+                    }
+                    if (dependentCache != null
+                            && dependsOnDependencies(name)) {
+                        dependent.put(name, result.getValue());
+                    } else {
+                        shared.put(name, result.getValue());
+                    }
+                }
+                merge(cache, shared);
+                if (dependentCache != null) {
+                    merge(dependentCache, dependent);
+                }
+            } finally {
+                fileLock.channel().close();
+            }
+        }
+    }
+
+
+    /**
+     * Adds results to a cache file, replacing it atomically.
+     */
+    private static void merge(File file, Map<String, String> results)
+    throws IOException {
+        if (results.isEmpty()) {
+            return;
+        }
+        Map<String, String> entries = new TreeMap<String, String>();
+        if (file.isFile()) {
+            read(file, entries);
+        }
+        entries.putAll(results);
+        File temp = new File(file.getPath() + ".tmp");
+        write(temp, entries);
+        Files.move(temp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static void write(File file, Map<String, String> entries)
+    throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# This file is a shell script that caches the"
+                  + " results of configure\n"
+                  + "# tests, shared by the configure runs of"
+                  + " maven-autotools-plugin.\n");
+        for (String line : entries.values()) {
+            sb.append(line).append('\n');
+        }
+        Files.write(file.toPath(),
+                    sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+
+    /**
+     * Reads the assignments of a cache file by variable name.  Autoconf
+     * writes them as <code>ac_cv_x=${ac_cv_x=value}</code> or, for
+     * variables that must not override the environment, as
+     * <code>test "${ac_cv_x+set}" = set || ac_cv_x=${ac_cv_x=value}</code>.
+     */
+    private static void read(File file, Map<String, String> entries)
+    throws IOException {
+        List<String> lines =
+            Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+        for (String line : lines) {
+            String name = null;
+            if (line.startsWith("test \"${")) {
+                int end = line.indexOf("+set}");
+                if (end > 0) {
+                    name = line.substring("test \"${".length(), end);
+                }
+            } else if (!line.startsWith("#")) {
+                int end = line.indexOf('=');
+                if (end > 0) {
+                    name = line.substring(0, end);
+                }
+            }
+            if (name != null && name.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+                entries.put(name, line);
+            }
+        }
+    }
+
+
+    private static String hash(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 8; ++k) {
+            sb.append(Character.forDigit((hash[k] >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(hash[k] & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+
+    private Object monitor() {
+        synchronized (monitors) {
+            String path = cache.getAbsolutePath();
+            Object monitor = monitors.get(path);
+            if (monitor == null) {
+                monitor = new Object();
+                monitors.put(path, monitor);
+            }
+            return monitor;
+        }
+    }
+
+
+    private FileLock lock()
+    throws IOException {
+        cache.getParentFile().mkdirs();
+        RandomAccessFile file = new RandomAccessFile(lock, "rw");
+        try {
+            return file.getChannel().lock();
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+}
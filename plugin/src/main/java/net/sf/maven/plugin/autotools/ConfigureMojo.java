@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+
+/**
+ * Starts the autotools bootstrap and 'configure' early, so that they run
+ * while the Java sources are compiled.  The compile goal waits for them
+ * before running 'make'.  Takes the same configuration as the compile
+ * goal; if the compile goal is configured differently, it runs
+ * 'configure' again with its own configuration.  Bound to
+ * generate-sources, it runs after the dependencies have been unpacked.
+ * If the build ends without the compile goal, for example because
+ * another module failed, a run still going is killed when the JVM exits
+ * and 'configure' runs again next time.
+ *
+ * @goal configure
+ * @phase generate-sources
+ * @threadSafe
+ * @description start 'configure' in the background
+ */
+public final class ConfigureMojo
+extends CompileMojo {
+
+    /**
+     * {@inheritDoc}
+     * @see org.apache.maven.plugin.AbstractMojo#execute()
+     */
+    @Override
+    public void execute()
+    throws MojoExecutionException {
+        startConfiguration();
+    }
+
+}
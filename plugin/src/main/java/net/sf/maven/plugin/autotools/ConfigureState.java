@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeSet;
+
+
+/**
+ * Decides whether 'configure' has to run again in a working directory.
+ * The fingerprint of a run covers the configure script and its inputs,
+ * the configure command line and the environment variables configure
+ * depends on; it is stored in the working directory after a successful
+ * run.  If it is unchanged and only makefile templates are newer than
+ * the last run, 'config.status' is enough to update the build.
+ */
+final class ConfigureState {
+
+    /**
+     * What has to be done to bring a working directory up to date.
+     */
+    enum Action {
+
+        /** Nothing, the configuration is up to date. */
+        NONE,
+
+        /** Regenerating the output files with 'config.status'. */
+        CONFIG_STATUS,
+
+        /** Running 'configure'. */
+        CONFIGURE
+
+    }
+
+
+    /** The file holding the fingerprint, in the working directory. */
+    static final String STAMP = ".autotools-configure";
+
+    /** The environment variables autoconf treats as precious. */
+    static final String[] PRECIOUS_VARIABLES = {
+        "CC", "CFLAGS", "CPP", "CPPFLAGS", "CXX", "CXXCPP", "CXXFLAGS",
+        "LDFLAGS", "LIBS", "PKG_CONFIG", "PKG_CONFIG_PATH",
+        "CONFIG_SITE", "CONFIG_SHELL", "PATH"
+    };
+
+    /** The files configure itself is made of. */
+    private static final String[] INPUTS = {
+        "configure", "configure.ac", "configure.in", "aclocal.m4"
+    };
+
+    /** */
+    private final File workingDirectory;
+
+    /** */
+    private final File configureDirectory;
+
+
+    /**
+     * Creates the configure state of a working directory.
+     *
+     * @param workingDirectory the directory configure runs in
+     * @param configureDirectory the directory of the configure script
+     */
+    ConfigureState(File workingDirectory, File configureDirectory) {
+        this.workingDirectory = workingDirectory;
+        this.configureDirectory = configureDirectory;
+    }
+
+
+    /**
+     * Computes the fingerprint of a configure run.
+     *
+     * @param command the configure command line
+     * @param env the environment of configure
+     * @param variables the names of the environment variables that
+     *                  matter, in addition to {@link #PRECIOUS_VARIABLES}
+     * @return the fingerprint
+     * @throws IOException if an input can not be read
+     */
+    String fingerprint(String command,
+                       Map<String, String> env,
+                       Collection<String> variables)
+    throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        update(digest, "command", command);
+        TreeSet<String> names = new TreeSet<String>(variables);
+        for (String name : PRECIOUS_VARIABLES) {
+            names.add(name);
+        }
+        for (String name : names) {
+            update(digest, name, env.get(name));
+        }
+        byte[] buffer = new byte[65536];
+        for (String input : INPUTS) {
+            File file = new File(configureDirectory, input);
+            if (!file.isFile()) {
+                continue;
+            }
+            update(digest, "file", input);
+            InputStream in = new FileInputStream(file);
+            try {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Decides what brings the working directory up to date.
+     *
+     * @param fingerprint the fingerprint of the configure run due
+     * @return the action
+     * @throws IOException if the configure directory can not be read
+     */
+    Action check(String fingerprint)
+    throws IOException {
+        File stamp = new File(workingDirectory, STAMP);
+        if (!stamp.isFile()
+                || !new File(workingDirectory, "config.status").isFile()) {
+            return Action.CONFIGURE;
+        }
+        String stored = new String(Files.readAllBytes(stamp.toPath()),
+                                   StandardCharsets.US_ASCII).trim();
+        if (!stored.equals(fingerprint)) {
+            return Action.CONFIGURE;
+        }
+        return newestTemplate() > stamp.lastModified()
+               ? Action.CONFIG_STATUS : Action.NONE;
+    }
+
+
+    /**
+     * Forgets the last run, before configure runs again.
+     */
+    void invalidate() {
+        new File(workingDirectory, STAMP).delete();
+    }
+
+
+    /**
+     * Remembers a successful run.
+     *
+     * @param fingerprint the fingerprint of the run
+     * @throws IOException if the fingerprint can not be written
+     */
+    void store(String fingerprint)
+    throws IOException {
+        Files.write(new File(workingDirectory, STAMP).toPath(),
+                    (fingerprint + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+
+    private static void update(MessageDigest digest,
+                               String name,
+                               String value) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+
+    /**
+     * Returns when a makefile or header template in the configure
+     * directory was last modified.
+     */
+    private long newestTemplate()
+    throws IOException {
+        final long[] newest = new long[1];
+        Files.walkFileTree(
+                configureDirectory.toPath(),
+                EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(
+                            Path file, BasicFileAttributes attrs) {
+                        String name = file.getFileName().toString();
+                        if (name.equals("Makefile.in")
+                                || name.equals("Makefile.am")
+                                || name.equals("config.h.in")) {
+                            newest[0] = Math.max(
+                                    newest[0],
+                                    attrs.lastModifiedTime().toMillis());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(
+                            Path file, IOException ex) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return newest[0];
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+
+/**
+ * Running 'sh -c' commands in a long-lived shell instead of a new child
+ * process.  Commands with their own environment and all other commands
+ * still get a child process of their own.
+ */
+public class CoprocessExecutor
+extends DefaultProcessExecutor {
+
+    @Override
+    protected int runProcess(
+            String[] command,
+            Map<String, String> env,
+            File workingDirectory,
+            OutputStream out,
+            OutputStream err)
+    throws IOException, InterruptedException {
+        if (env != null
+                || command.length != 3
+                || !"sh".equals(command[0])
+                || !"-c".equals(command[1])) {
+            return super.runProcess(command, env, workingDirectory, out, err);
+        }
+        return ShellCoprocess.execute(command[2], workingDirectory, out, err);
+    }
+
+}
@@ -20,9 +20,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -31,10 +38,25 @@ import java.util.Map;
 public class DefaultProcessExecutor
 implements ProcessExecutor {
 
+    /** The threads running tasks in the background. */
+    private static final ExecutorService ASYNC =
+        Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "autotools-process-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
     private OutputStream stdout;
 
     private OutputStream stderr;
 
+    private Jobserver jobserver;
+
 
     /**
      * Set the standard output stream.
@@ -56,6 +78,16 @@ implements ProcessExecutor {
     }
 
 
+    /**
+     * Set the jobserver that child processes share.
+     *
+     * @param jobserver the jobserver or <code>null</code> for none
+     */
+    public void setJobserver(Jobserver jobserver) {
+        this.jobserver = jobserver;
+    }
+
+
     /**
      * Executes the specified command in a child process passing stdout
      * and stderr to the specified output streams.
@@ -71,31 +103,107 @@ implements ProcessExecutor {
             String[] command,
             Map<String, String> env,
             File workingDirectory)
+    throws IOException, InterruptedException {
+        int status = execProcess(command, env, workingDirectory,
+                                 getStdout(), getStderr());
+        if (status != 0) {
+            throw failure(command, status);
+        }
+    }
+
+
+    /**
+     * Runs a task on a daemon thread of a pool shared by the build.
+     *
+     * @param task the task
+     */
+    static void executeAsync(Runnable task) {
+        ASYNC.execute(task);
+    }
+
+
+    /**
+     * Executes the specified shell commands one after the other in a
+     * single shell, stopping at the first command that fails.  Each
+     * command is preceded by a marker line on the standard output, which
+     * is taken out again and tells the durations and the failing command.
+     *
+     * @param commands the shell commands
+     * @param env the environment variables
+     * @param workingDirectory the working directory (getcwd)
+     * @return the durations of the commands in milliseconds
+     * @throws IOException if an I/O error occurs or if a command fails
+     * @throws InterruptedException if the child process is interrupted
+     */
+    public long[] execBatch(
+            List<String> commands,
+            Map<String, String> env,
+            File workingDirectory)
+    throws IOException, InterruptedException {
+        if (commands.isEmpty()) {
+            return new long[0];
+        }
+        BatchMarkerStream markers =
+            new BatchMarkerStream(getStdout(), commands.size() + 1);
+        StringBuilder script = new StringBuilder("set -e\n");
+        for (int k = 0; k < commands.size(); ++k) {
+            script.append(markers.markerCommand(k)).append('\n')
+                  .append(commands.get(k)).append('\n');
+        }
+        script.append(markers.markerCommand(commands.size())).append('\n');
+        String[] command = {"sh", "-c", script.toString()};
+        try {
+            int status = execProcess(command, env, workingDirectory,
+                                     markers, getStderr());
+            if (status != 0) {
+                throw failure(command, status);
+            }
+        } catch (IOException ex) {
+            int step = markers.getStep();
+            if (step < 0 || step >= commands.size()) {
+                throw ex;
+            }
+            throw new IOException(
+                    "Command \"" + commands.get(step) + "\" failed", ex);
+        } finally {
+            markers.flush();
+        }
+        return markers.getDurations();
+    }
+
+
+    /**
+     * Runs a child process and waits for it to terminate.
+     *
+     * @param command the command as a string array
+     * @param env the environment variables or <code>null</code> to
+     *            inherit those of this process
+     * @param workingDirectory the working directory (getcwd)
+     * @param out receives the standard output of the child process
+     * @param err receives the standard error output of the child process
+     * @return the exit status of the child process
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if the child process is interrupted;
+     *                              the child process is killed then
+     */
+    protected int runProcess(
+            String[] command,
+            Map<String, String> env,
+            File workingDirectory,
+            OutputStream out,
+            OutputStream err)
     throws IOException, InterruptedException {
         Runtime runtime = Runtime.getRuntime();
         Process process = runtime.exec(command, envp(env), workingDirectory);
         InputStream stdoutInput = process.getInputStream();
         InputStream stderrInput = process.getErrorStream();
-        OutputStream stdoutResultStream = stdout;
-        OutputStream stderrResultStream = stderr;
-        if (stdoutResultStream == null) {
-            stdoutResultStream = System.out;
-        }
-        if (stderrResultStream == null) {
-            stderrResultStream = System.err;
-        }
         StreamPump outStreamPump =
-            new StreamPump(stdoutInput, stdoutResultStream);
+            new StreamPump(stdoutInput, out);
         StreamPump errStreamPump =
-            new StreamPump(stderrInput, stderrResultStream);
+            new StreamPump(stderrInput, err);
         outStreamPump.start();
         errStreamPump.start();
-        int status = process.waitFor();
-        if (status != 0) {
-            throw new IOException(
-                    "Child process \"" + command[0]
-                    + "\" terminated with code " + status);
-        }
+        int status = waitFor(process);
         try {
             outStreamPump.stop();
         } finally {
@@ -106,6 +214,151 @@ implements ProcessExecutor {
         } finally {
             errStreamPump.waitFor();
         }
+        return status;
+    }
+
+
+    /**
+     * Returns the exception reporting that a child process terminated
+     * with a non-zero code.
+     *
+     * @param command the command as a string array
+     * @param status the exit status of the child process
+     * @return the exception
+     */
+    protected IOException failure(String[] command, int status) {
+        return new IOException(
+                "Child process \"" + command[0]
+                + "\" terminated with code " + status);
+    }
+
+
+    /**
+     * Waits for a child process to terminate, killing it and its
+     * descendants if interrupted.  An interrupt that came before the
+     * child process was started is noticed here, too.
+     *
+     * @param process the child process
+     * @return the exit status of the child process
+     * @throws InterruptedException if interrupted
+     */
+    protected static int waitFor(Process process)
+    throws InterruptedException {
+        try {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return process.waitFor();
+        } catch (InterruptedException ex) {
+            destroyTree(process);
+            throw ex;
+        }
+    }
+
+
+    /**
+     * Runs a child process holding a jobserver token, if there is a
+     * jobserver.
+     */
+    private int execProcess(
+            String[] command,
+            Map<String, String> env,
+            File workingDirectory,
+            OutputStream out,
+            OutputStream err)
+    throws IOException, InterruptedException {
+        Jobserver js = jobserver;
+        if (js != null) {
+            js.acquire();
+            env = jobserverEnv(env, js);
+        }
+        try {
+            return runProcess(command, env, workingDirectory, out, err);
+        } finally {
+            if (js != null) {
+                js.release();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the jobserver that child processes share.
+     *
+     * @return the jobserver or <code>null</code> for none
+     */
+    protected Jobserver getJobserver() {
+        return jobserver;
+    }
+
+
+    /**
+     * Returns the stream receiving the standard output of child processes.
+     *
+     * @return the standard output stream, System.out by default
+     */
+    protected OutputStream getStdout() {
+        return stdout != null ? stdout : System.out;
+    }
+
+
+    /**
+     * Returns the stream receiving the standard error of child processes.
+     *
+     * @return the standard error stream, System.err by default
+     */
+    protected OutputStream getStderr() {
+        return stderr != null ? stderr : System.err;
+    }
+
+
+    /**
+     * Returns the environment with the jobserver added to MAKEFLAGS.
+     */
+    private static Map<String, String> jobserverEnv(Map<String, String> env,
+                                                    Jobserver js) {
+        Map<String, String> jobserverEnv =
+            new HashMap<String, String>(env != null ? env : System.getenv());
+        String makeflags = jobserverEnv.get("MAKEFLAGS");
+        jobserverEnv.put("MAKEFLAGS",
+                         makeflags == null || makeflags.length() == 0
+                         ? js.getMakeFlags()
+                         : makeflags + " " + js.getMakeFlags());
+        return jobserverEnv;
+    }
+
+
+    /**
+     * Kills a process and its descendants.  The descendants can only be
+     * found on Java 9 and later, older JVMs just kill the process itself.
+     * The process is killed before its descendants, so that it can not
+     * go on with the next command when one of them dies.
+     */
+    static void destroyTree(Process process) {
+        List<Object> descendants = new ArrayList<Object>();
+        Method destroy = null;
+        try {
+            Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            Object handle = Process.class.getMethod("toHandle").invoke(process);
+            Iterator<?> iterator = (Iterator<?>)
+                Class.forName("java.util.stream.BaseStream")
+                     .getMethod("iterator").invoke(
+                         handleClass.getMethod("descendants").invoke(handle));
+            while (iterator.hasNext()) {
+                descendants.add(iterator.next());
+            }
+            destroy = handleClass.getMethod("destroyForcibly");
+        } catch (ReflectiveOperationException ex) {
+            // Java 8 and older.
+        }
+        process.destroy();
+        try {
+            for (Object descendant : descendants) {
+                destroy.invoke(descendant);
+            }
+        } catch (ReflectiveOperationException ex) {
+            // Not expected, the method has been looked up above.
+        }
     }
 
 
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+
+
+/**
+ * Collects gcc, clang and libtool diagnostics from standard error
+ * output, one line at a time, and reports them per file and category.
+ */
+final class Diagnostics {
+
+    /** The number of diagnostics kept with their location per file. */
+    private static final int MAX_LOCATIONS = 200;
+
+    private static final String WARNING = "warning";
+
+    private static final String ERROR = "error";
+
+    /** What follows the location in a diagnostic. */
+    private static final String[] MARKERS = {
+        ": warning: ", ": error: ", ": fatal error: "
+    };
+
+    /** The diagnostics per file. */
+    private final Map<String, FileDiagnostics> files =
+        new TreeMap<String, FileDiagnostics>();
+
+    /** The warnings and errors per category. */
+    private final Map<String, int[]> categories = new TreeMap<String, int[]>();
+
+    /** */
+    private int warnings;
+
+    /** */
+    private int errors;
+
+
+    /**
+     * Records the diagnostic in a line, if any.
+     *
+     * @param line a line of standard error output
+     */
+    synchronized void parse(String line) {
+        int at = -1;
+        String marker = null;
+        for (String m : MARKERS) {
+            int k = line.indexOf(m);
+            if (k >= 0 && (at < 0 || k < at)) {
+                at = k;
+                marker = m;
+            }
+        }
+        if (at < 0) {
+            return;
+        }
+        String severity = marker == MARKERS[0] ? WARNING : ERROR;
+        String message = line.substring(at + marker.length()).trim();
+        String location = line.substring(0, at);
+        int lineNumber = 0;
+        int column = 0;
+        int colon = location.lastIndexOf(':');
+        if (colon >= 0 && isNumber(location, colon + 1)) {
+            int number = Integer.parseInt(location.substring(colon + 1));
+            location = location.substring(0, colon);
+            colon = location.lastIndexOf(':');
+            if (colon >= 0 && isNumber(location, colon + 1)) {
+                lineNumber = Integer.parseInt(location.substring(colon + 1));
+                column = number;
+                location = location.substring(0, colon);
+            } else {
+                lineNumber = number;
+            }
+        }
+        // "ld: foo.o: warning: ..." names the tool before the file.
+        int tool = location.lastIndexOf(": ");
+        if (tool >= 0) {
+            location = location.substring(tool + 2);
+        }
+        location = location.trim();
+        if (location.isEmpty()) {
+            return;
+        }
+        String category = category(message, severity);
+        if (location.equals("libtool")) {
+            category = "libtool";
+        }
+
+        FileDiagnostics file = files.get(location);
+        if (file == null) {
+            file = new FileDiagnostics();
+            files.put(location, file);
+        }
+        int[] counts = categories.get(category);
+        if (counts == null) {
+            counts = new int[2];
+            categories.put(category, counts);
+        }
+        int[] fileCounts = file.categories.get(category);
+        if (fileCounts == null) {
+            fileCounts = new int[2];
+            file.categories.put(category, fileCounts);
+        }
+        int kind = severity == WARNING ? 0 : 1;
+        ++counts[kind];
+        ++fileCounts[kind];
+        if (kind == 0) {
+            ++warnings;
+            ++file.warnings;
+        } else {
+            ++errors;
+            ++file.errors;
+        }
+        if (file.locations.size() < MAX_LOCATIONS) {
+            file.locations.add(new Location(lineNumber, column, severity,
+                                            category, message));
+        }
+    }
+
+
+    /**
+     * Returns the number of warnings seen.
+     *
+     * @return the number of warnings
+     */
+    synchronized int getWarnings() {
+        return warnings;
+    }
+
+
+    /**
+     * Returns the number of errors seen.
+     *
+     * @return the number of errors
+     */
+    synchronized int getErrors() {
+        return errors;
+    }
+
+
+    /**
+     * Writes the report.
+     *
+     * @param report the report file
+     * @throws IOException if the report can not be written
+     */
+    synchronized void write(File report)
+    throws IOException {
+        report.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(
+                new FileOutputStream(report), "UTF-8");
+        try {
+            XMLWriter xml = new PrettyPrintXMLWriter(out, "UTF-8", null);
+            xml.startElement("diagnostics");
+            xml.addAttribute("warnings", Integer.toString(warnings));
+            xml.addAttribute("errors", Integer.toString(errors));
+            writeCategories(xml, categories);
+            for (Map.Entry<String, FileDiagnostics> entry
+                    : files.entrySet()) {
+                FileDiagnostics file = entry.getValue();
+                xml.startElement("file");
+                xml.addAttribute("path", entry.getKey());
+                xml.addAttribute("warnings", Integer.toString(file.warnings));
+                xml.addAttribute("errors", Integer.toString(file.errors));
+                writeCategories(xml, file.categories);
+                for (Location location : file.locations) {
+                    xml.startElement("diagnostic");
+                    xml.addAttribute("line", Integer.toString(location.line));
+                    if (location.column > 0) {
+                        xml.addAttribute("column",
+                                         Integer.toString(location.column));
+                    }
+                    xml.addAttribute("severity", location.severity);
+                    xml.addAttribute("category", location.category);
+                    xml.writeText(location.message);
+                    xml.endElement();
+                }
+                xml.endElement();
+            }
+            xml.endElement();
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private static void writeCategories(XMLWriter xml,
+                                        Map<String, int[]> categories) {
+        for (Map.Entry<String, int[]> entry : categories.entrySet()) {
+            xml.startElement("category");
+            xml.addAttribute("name", entry.getKey());
+            xml.addAttribute("warnings", Integer.toString(entry.getValue()[0]));
+            xml.addAttribute("errors", Integer.toString(entry.getValue()[1]));
+            xml.endElement();
+        }
+    }
+
+
+    /**
+     * Returns the warning option named at the end of a message, e.g.
+     * "-Wunused-variable", or the severity if there is none.
+     */
+    private static String category(String message, String severity) {
+        if (!message.endsWith("]")) {
+            return severity;
+        }
+        int open = message.lastIndexOf(" [-W");
+        if (open < 0) {
+            return severity;
+        }
+        String option = message.substring(open + 2, message.length() - 1);
+        if (option.startsWith("-Werror=")) {
+            option = "-W" + option.substring("-Werror=".length());
+        }
+        return option;
+    }
+
+
+    private static boolean isNumber(String s, int start) {
+        if (start >= s.length()) {
+            return false;
+        }
+        for (int k = start; k < s.length(); ++k) {
+            if (s.charAt(k) < '0' || s.charAt(k) > '9') {
+                return false;
+            }
+        }
+        return s.length() - start < 10;
+    }
+
+
+    /**
+     * The diagnostics of one file.
+     */
+    private static final class FileDiagnostics {
+
+        private final Map<String, int[]> categories =
+            new TreeMap<String, int[]>();
+
+        private final List<Location> locations = new ArrayList<Location>();
+
+        private int warnings;
+
+        private int errors;
+
+    }
+
+
+    /**
+     * A diagnostic.
+     */
+    private static final class Location {
+
+        private final int line;
+
+        private final int column;
+
+        private final String severity;
+
+        private final String category;
+
+        private final String message;
+
+
+        Location(int line,
+                 int column,
+                 String severity,
+                 String category,
+                 String message) {
+            this.line = line;
+            this.column = column;
+            this.severity = severity;
+            this.category = category;
+            this.message = message;
+        }
+
+    }
+
+}
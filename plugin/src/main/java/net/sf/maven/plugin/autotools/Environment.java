@@ -16,38 +16,40 @@
 
 package net.sf.maven.plugin.autotools;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 
 
 /**
- *
+ * The platform the build runs on.  Instances are immutable, so mojos
+ * running in parallel may share them.
  */
 public final class Environment {
 
     /** */
-    private static Environment environment = new Environment();
+    private static final Environment environment = new Environment();
 
     /** */
-    private String os;
+    private final String os;
 
     /** */
-    private String arch;
+    private final String arch;
 
     /** */
-    private Map<String, String> platformMapping;
+    private final Map<String, String> platformMapping;
 
 
     /**
      * No public instantiation.
      */
     private Environment() {
-        os = System.getProperty("os.name").toLowerCase();
+        String os = System.getProperty("os.name").toLowerCase();
         if (os.startsWith("windows")) {
             os = "windows";
         }
-        os = os.replaceAll("[ /]", "");
-        arch = System.getProperty("os.arch").toLowerCase();
+        this.os = os.replaceAll("[ /]", "");
+        String arch = System.getProperty("os.arch").toLowerCase();
         if (arch.equals("i386")) {
            arch = "x86";
         } else if (arch.equals("amd64")) {
@@ -55,7 +57,18 @@ public final class Environment {
         } else if (arch.equals("powerpc")) {
            arch = "ppc";
         }
-        platformMapping = new HashMap<String, String>();
+        this.arch = arch;
+        this.platformMapping = Collections.emptyMap();
+    }
+
+
+    private Environment(Environment base,
+                        Map<String, String> platformMapping) {
+        this.os = base.os;
+        this.arch = base.arch;
+        this.platformMapping =
+            Collections.unmodifiableMap(
+                    new HashMap<String, String>(platformMapping));
     }
 
 
@@ -138,14 +151,18 @@ public final class Environment {
 
 
     /**
-     * Provide alternative names for target platforms.
+     * Returns a view of this environment that uses alternative names
+     * for target platforms.  This environment remains unchanged.
+     *
+     * @param platformMapping the alternative names, may be <code>null</code>
+     * @return the mapped environment
      */
-    public void applyPlatformMapping(Map<String, String> platformMapping) {
-        Map<String, String> clonedMapping = new HashMap<String, String>();
-        if (platformMapping != null) {
-            clonedMapping.putAll(platformMapping);
+    public Environment withPlatformMapping(
+            Map<String, String> platformMapping) {
+        if (platformMapping == null || platformMapping.isEmpty()) {
+            return this;
         }
-        this.platformMapping = clonedMapping;
+        return new Environment(this, platformMapping);
     }
 
 
@@ -153,10 +170,9 @@ public final class Environment {
      * @return the attached artifact classifier
      */
     public String getClassifier() {
-        Environment env = Environment.getEnvironment();
         return "native"
-            + "-" + env.getSystemArchitecture()
-            + "-" + env.getOperatingSystem();
+            + "-" + getSystemArchitecture()
+            + "-" + getOperatingSystem();
     }
 
 
@@ -34,6 +34,15 @@ extends org.codehaus.plexus.util.FileUtils {
     }
 
 
+    /**
+     * Returns whether the given name denotes a symlink to an existing
+     * file.  Regular files do not count, since they have been generated
+     * in the build directory rather than mirrored from the sources.
+     *
+     * @param directory the directory
+     * @param name the name of the link
+     * @return whether the link exists and points to an existing file
+     */
     public static boolean fileExists(File directory, String name) {
         try {
             File file = SymlinkUtils.resolveSymlink(new File(directory, name));
@@ -34,6 +34,7 @@ import org.objectweb.asm.ClassReader;
 /**
  * @goal javah
  * @phase compile
+ * @threadSafe
  * @description run javah
  */
 public final class JavahMojo
@@ -65,6 +66,15 @@ extends AbstractMojo {
      */
     private ProcessExecutor exec = new DefaultProcessExecutor();
 
+    /**
+     * The build session; typed as Object so that the plugin does not
+     * depend on maven-core.
+     *
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private Object session;
+
     /**
      * Used to avoid running this mojo multiple times with exactly the
      * same configuration.
@@ -78,7 +88,8 @@ extends AbstractMojo {
      */
     public void execute()
     throws MojoExecutionException {
-        if (repeated.alreadyRun(getClass().getName(),
+        if (repeated.alreadyRun(session,
+                                getClass().getName(),
                                 configureDirectory,
                                 classesDirectory)) {
             getLog().info("Skipping repeated execution");
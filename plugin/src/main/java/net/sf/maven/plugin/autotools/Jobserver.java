@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+
+
+/**
+ * A GNU make jobserver shared by all modules of a reactor build.  The job
+ * tokens live in a named pipe that is passed to every make child via
+ * MAKEFLAGS, so the number of concurrent jobs stays bounded no matter how
+ * many modules are built in parallel.  Requires GNU make 4.4 or later.
+ */
+public final class Jobserver {
+
+    private static final byte TOKEN = '+';
+
+    private static final long MONITOR_INTERVAL = 2000;
+
+    private static final File MEMINFO = new File("/proc/meminfo");
+
+    /** */
+    private static Jobserver jobserver;
+
+    /** */
+    private File fifo;
+
+    /** */
+    private RandomAccessFile tokens;
+
+    /** */
+    private int slots;
+
+    /** The tokens taken out of the fifo by the memory monitor. */
+    private volatile int withheld;
+
+    /** */
+    private volatile long minimumFreeMemory;
+
+    /** The file the available memory is read from. */
+    private File meminfo = MEMINFO;
+
+    /** The milliseconds between two reads of {@link #meminfo}. */
+    private long monitorInterval = MONITOR_INTERVAL;
+
+
+    /**
+     * Creates a jobserver of its own; the build shares the one returned
+     * by {@link #getJobserver}.
+     *
+     * @param slots the number of jobs that may run at the same time
+     * @throws IOException if the fifo can not be created
+     */
+    Jobserver(int slots)
+    throws IOException {
+        this.slots = slots;
+        fifo = File.createTempFile("autotools-jobserver-", "");
+        fifo.delete();
+        String[] command = {
+                "mkfifo", "-m", "600", fifo.getAbsolutePath()
+        };
+        try {
+            new DefaultProcessExecutor().execProcess(command, null, null);
+        } catch (InterruptedException ex) {
+            throw new IOException("Failed to create jobserver fifo", ex);
+        }
+        fifo.deleteOnExit();
+        // Opening for reading and writing does not block on a fifo.
+        tokens = new RandomAccessFile(fifo, "rw");
+        for (int k = 0; k < slots; ++k) {
+            tokens.write(TOKEN);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+
+    /**
+     * Returns the jobserver of this build, creating it on first use.
+     * Only the first caller determines the number of slots.
+     *
+     * @param slots the number of jobs that may run at the same time
+     * @return the jobserver
+     * @throws IOException if the fifo can not be created
+     */
+    public static synchronized Jobserver getJobserver(int slots)
+    throws IOException {
+        if (jobserver == null) {
+            jobserver = new Jobserver(Math.max(1, slots));
+        }
+        return jobserver;
+    }
+
+
+    /**
+     * Returns the options to add to MAKEFLAGS so that make joins this
+     * jobserver.
+     *
+     * @return the make flags
+     */
+    public String getMakeFlags() {
+        return "-j --jobserver-auth=fifo:"
+            + FileUtils.fixAbsolutePathForUnixShell(fifo);
+    }
+
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+
+    /**
+     * Takes a token, blocking until one is available.  A top level make
+     * runs its first job on the token taken by the plugin.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void acquire()
+    throws IOException {
+        if (tokens.read() < 0) {
+            throw new IOException("Jobserver fifo " + fifo + " was closed");
+        }
+    }
+
+
+    /**
+     * Returns a token.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void release()
+    throws IOException {
+        tokens.write(TOKEN);
+    }
+
+
+    /**
+     * Returns the number of tokens withheld for lack of memory.
+     *
+     * @return the number of tokens
+     */
+    int getWithheld() {
+        return withheld;
+    }
+
+
+    /**
+     * Reads the available memory from another file than /proc/meminfo.
+     * Has to be called before {@link #setMinimumFreeMemory}.
+     *
+     * @param meminfo a file in the format of /proc/meminfo
+     * @param interval the milliseconds between two reads
+     */
+    void monitor(File meminfo, long interval) {
+        this.meminfo = meminfo;
+        this.monitorInterval = interval;
+    }
+
+
+    /**
+     * Withholds tokens while the free memory of the machine is below the
+     * given amount.  Only supported where /proc/meminfo exists.
+     *
+     * @param bytes the minimum free memory, zero disables the check
+     */
+    public synchronized void setMinimumFreeMemory(long bytes) {
+        boolean start = minimumFreeMemory <= 0 && bytes > 0;
+        minimumFreeMemory = bytes;
+        if (start && readAvailableMemory() >= 0) {
+            Thread monitor = new Thread("autotools-jobserver-monitor") {
+                @Override
+                public void run() {
+                    monitorMemory();
+                }
+            };
+            monitor.setDaemon(true);
+            monitor.start();
+        }
+    }
+
+
+    private void monitorMemory() {
+        try {
+            while (minimumFreeMemory > 0) {
+                long available = readAvailableMemory();
+                if (available >= 0 && available < minimumFreeMemory
+                        && withheld < slots - 1) {
+                    acquire();
+                    ++withheld;
+                } else if (withheld > 0
+                        && (available < 0
+                            || available > 2 * minimumFreeMemory)) {
+                    release();
+                    --withheld;
+                }
+                Thread.sleep(monitorInterval);
+            }
+            while (withheld > 0) {
+                release();
+                --withheld;
+            }
+        } catch (IOException ex) {
+        } catch (InterruptedException ex) {
+        }
+    }
+
+
+    /**
+     * Returns the available memory in bytes as reported by the kernel.
+     *
+     * @return the available memory or -1 if unknown
+     */
+    private long readAvailableMemory() {
+        if (!meminfo.canRead()) {
+            return -1;
+        }
+        try {
+            BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(meminfo), "US-ASCII"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("MemAvailable:")) {
+                        String[] fields = line.trim().split("\\s+");
+                        return Long.parseLong(fields[1]) * 1024;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+        } catch (NumberFormatException ex) {
+        }
+        return -1;
+    }
+
+
+    /**
+     * Closes the fifo.  Child processes still holding it open keep their
+     * tokens.
+     */
+    void close() {
+        minimumFreeMemory = 0;
+        try {
+            tokens.close();
+        } catch (IOException ex) {
+        }
+        fifo.delete();
+    }
+
+}
@@ -36,7 +36,7 @@ extends OutputStream {
 
     private CharBuffer chars = CharBuffer.allocate(1);
 
-    private StringBuffer line = new StringBuffer();
+    private StringBuilder line = new StringBuilder();
 
 
     public abstract void writeLine(String line)
@@ -72,6 +72,55 @@ extends OutputStream {
     }
 
 
+    /**
+     * Decodes runs of ASCII characters and complete two and three byte
+     * sequences straight into the current line.  All other bytes, and any
+     * bytes completing a pending sequence, take the path of
+     * {@link #write(int)}.
+     */
+    @Override
+    public void write(byte[] b, int off, int len)
+    throws IOException {
+        int end = off + len;
+        int k = off;
+        int last = -1;
+        while (k < end) {
+            if (pending > 0 || b[k] < 0 && decodeSequence(b, k, end) < 0) {
+                if (last >= 0) {
+                    // Leave the decoder state as write(int) would have.
+                    chars.put(0, (char) last);
+                    last = -1;
+                }
+                write(b[k++]);
+            } else if (b[k] >= 0) {
+                int start = k;
+                while (k < end && b[k] >= 0 && b[k] != 10 && b[k] != 13) {
+                    ++k;
+                }
+                line.ensureCapacity(line.length() + k - start);
+                for (int p = start; p < k; ++p) {
+                    line.append((char) b[p]);
+                }
+                if (k < end && b[k] >= 0) {
+                    // A line break.
+                    last = b[k++];
+                    flush();
+                } else if (k > start) {
+                    last = b[k - 1];
+                }
+            } else {
+                int ch = decodeSequence(b, k, end);
+                line.append((char) ch);
+                k += ch < 0x800 ? 2 : 3;
+                last = ch;
+            }
+        }
+        if (last >= 0) {
+            chars.put(0, (char) last);
+        }
+    }
+
+
     @Override
     public void close()
     throws IOException {
@@ -94,6 +143,39 @@ extends OutputStream {
     }
 
 
+    /**
+     * Decodes a well-formed two or three byte sequence.
+     *
+     * @return the character or -1 if there is no such sequence at the
+     *         given position
+     */
+    private static int decodeSequence(byte[] b, int k, int end) {
+        int b0 = b[k] & 0xff;
+        if (b0 >= 0xc2 && b0 <= 0xdf) {
+            if (k + 1 < end && isContinuation(b[k + 1])) {
+                return (b0 & 0x1f) << 6 | b[k + 1] & 0x3f;
+            }
+        } else if (b0 >= 0xe0 && b0 <= 0xef) {
+            if (k + 2 < end
+                    && isContinuation(b[k + 1])
+                    && isContinuation(b[k + 2])) {
+                int ch = (b0 & 0x0f) << 12
+                         | (b[k + 1] & 0x3f) << 6
+                         | b[k + 2] & 0x3f;
+                if (ch >= 0x800 && (ch < 0xd800 || ch > 0xdfff)) {
+                    return ch;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xc0) == 0x80;
+    }
+
+
     private void resetDecoder() {
         bytes.clear();
         bytes.put(new byte[4]);
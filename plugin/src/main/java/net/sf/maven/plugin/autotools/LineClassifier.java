@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Decides the log level of output lines by a list of {@link LogFilter}s,
+ * the first matching one winning.  The literal rules are compiled into
+ * one Aho-Corasick automaton and the regular expressions into one
+ * pattern, so that each line is scanned once per kind of rule.  Joining
+ * renumbers the groups of the expressions, so those with backreferences
+ * or named groups are compiled on their own.
+ */
+final class LineClassifier {
+
+    /**
+     * The log level of a line.
+     */
+    enum Level {
+
+        /** Not logged at all. */
+        SUPPRESS,
+
+        /** */
+        INFO,
+
+        /** */
+        WARN,
+
+        /** */
+        ERROR;
+
+
+        static Level forName(String name) {
+            if ("suppress".equals(name)) {
+                return SUPPRESS;
+            } else if ("info".equals(name)) {
+                return INFO;
+            } else if ("warn".equals(name)) {
+                return WARN;
+            } else if ("error".equals(name)) {
+                return ERROR;
+            }
+            throw new IllegalArgumentException(
+                    "Unknown log level '" + name + "'");
+        }
+
+    }
+
+
+    /**
+     * Finds backreferences and named groups, which do not survive the
+     * joining of the expressions: an unescaped backslash followed by a
+     * digit or 'k&lt;', or an unescaped '(?&lt;' followed by a name.
+     */
+    private static final Pattern GROUP_REFERENCE =
+        Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*"
+                        + "(?:\\\\(?:[1-9]|k<)|\\(\\?<[A-Za-z])");
+
+    /** The level of lines not matched by any rule. */
+    private final Level defaultLevel;
+
+    /** The levels of the rules, in order. */
+    private final Level[] levels;
+
+    /** The transitions of the automaton, per state sorted by character. */
+    private char[][] keys;
+
+    /** */
+    private int[][] targets;
+
+    /** The states to fall back to if there is no transition. */
+    private int[] fail;
+
+    /** The literals ending in a state, including those of fallbacks. */
+    private Literal[][] outputs;
+
+    /** The regular expressions joined, or <code>null</code> if none. */
+    private final Pattern patterns;
+
+    /** The rule index of each alternative of {@link #patterns}. */
+    private final int[] patternRules;
+
+    /** The group marking each alternative of {@link #patterns}. */
+    private final String[] patternGroups;
+
+    /** The regular expressions compiled on their own, in order. */
+    private final Pattern[] separatePatterns;
+
+    /** The rule index of each of {@link #separatePatterns}. */
+    private final int[] separateRules;
+
+
+    /**
+     * Compiles rules.
+     *
+     * @param filters the rules, in order of precedence
+     * @param stderr whether the lines are standard error output
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    LineClassifier(List<LogFilter> filters, boolean stderr) {
+        this.defaultLevel = stderr ? Level.WARN : Level.INFO;
+        List<Level> ruleLevels = new ArrayList<Level>();
+        List<Literal> literals = new ArrayList<Literal>();
+        List<Integer> ruleIndexes = new ArrayList<Integer>();
+        List<Pattern> separate = new ArrayList<Pattern>();
+        List<Integer> separateIndexes = new ArrayList<Integer>();
+        StringBuilder joined = new StringBuilder("^(?:");
+        for (LogFilter filter : filters) {
+            if (!filter.appliesTo(stderr)) {
+                continue;
+            }
+            int rule = ruleLevels.size();
+            int kinds = (filter.getContains() != null ? 1 : 0)
+                        + (filter.getLine() != null ? 1 : 0)
+                        + (filter.getPattern() != null ? 1 : 0);
+            if (kinds != 1) {
+                throw new IllegalArgumentException(
+                        "A log filter needs exactly one of contains, line"
+                        + " and pattern");
+            }
+            ruleLevels.add(Level.forName(filter.getLevel()));
+            if (filter.getPattern() != null) {
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(filter.getPattern(),
+                                              Pattern.DOTALL);
+                } catch (PatternSyntaxException ex) {
+                    throw new IllegalArgumentException(
+                            "Invalid log filter " + filter, ex);
+                }
+                if (GROUP_REFERENCE.matcher(filter.getPattern()).find()) {
+                    separate.add(pattern);
+                    separateIndexes.add(rule);
+                    continue;
+                }
+                if (!ruleIndexes.isEmpty()) {
+                    joined.append('|');
+                }
+                // A lookahead per rule keeps the order of the rules.
+                joined.append("(?=.*?(?:").append(filter.getPattern())
+                      .append("))(?<r").append(ruleIndexes.size())
+                      .append(">)");
+                ruleIndexes.add(rule);
+            } else if ((filter.getLine() != null
+                        ? filter.getLine().trim() : filter.getContains())
+                       .isEmpty()) {
+                throw new IllegalArgumentException(
+                        "Empty log filter " + filter);
+            } else if (filter.getLine() != null) {
+                literals.add(new Literal(filter.getLine().trim(), rule, true));
+            } else {
+                literals.add(new Literal(filter.getContains(), rule, false));
+            }
+        }
+        levels = ruleLevels.toArray(new Level[ruleLevels.size()]);
+        buildAutomaton(literals);
+        if (ruleIndexes.isEmpty()) {
+            patterns = null;
+            patternRules = new int[0];
+            patternGroups = new String[0];
+        } else {
+            patterns = Pattern.compile(joined.append(')').toString(),
+                                       Pattern.DOTALL);
+            patternRules = new int[ruleIndexes.size()];
+            patternGroups = new String[ruleIndexes.size()];
+            for (int k = 0; k < patternRules.length; ++k) {
+                patternRules[k] = ruleIndexes.get(k);
+                patternGroups[k] = "r" + k;
+            }
+        }
+        separatePatterns = separate.toArray(new Pattern[separate.size()]);
+        separateRules = new int[separateIndexes.size()];
+        for (int k = 0; k < separateRules.length; ++k) {
+            separateRules[k] = separateIndexes.get(k);
+        }
+    }
+
+
+    /**
+     * Returns the level of a line.
+     *
+     * @param line the line
+     * @return the level of the first matching rule, or the default level
+     */
+    Level classify(String line) {
+        int rule = matchLiterals(line);
+        if (patterns != null && (rule < 0 || patternRules[0] < rule)) {
+            Matcher matcher = patterns.matcher(line);
+            if (matcher.lookingAt()) {
+                for (int k = 0; k < patternRules.length; ++k) {
+                    if (rule >= 0 && patternRules[k] > rule) {
+                        break;
+                    }
+                    if (matcher.group(patternGroups[k]) != null) {
+                        rule = patternRules[k];
+                        break;
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < separatePatterns.length; ++k) {
+            if (rule >= 0 && separateRules[k] > rule) {
+                break;
+            }
+            if (separatePatterns[k].matcher(line).find()) {
+                rule = separateRules[k];
+                break;
+            }
+        }
+        return rule >= 0 ? levels[rule] : defaultLevel;
+    }
+
+
+    /**
+     * Runs the automaton over a line.
+     *
+     * @return the index of the first matching literal rule or -1
+     */
+    private int matchLiterals(String line) {
+        int first = 0;
+        int last = line.length();
+        while (first < last && line.charAt(first) <= ' ') {
+            ++first;
+        }
+        while (last > first && line.charAt(last - 1) <= ' ') {
+            --last;
+        }
+        int rule = -1;
+        int state = 0;
+        for (int i = 0; i < line.length(); ++i) {
+            char ch = line.charAt(i);
+            int next = transition(state, ch);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = transition(state, ch);
+            }
+            state = next < 0 ? 0 : next;
+            for (Literal literal : outputs[state]) {
+                if (rule >= 0 && literal.rule >= rule) {
+                    continue;
+                }
+                if (literal.wholeLine
+                        && (i + 1 != last
+                            || i + 1 - literal.text.length() != first)) {
+                    continue;
+                }
+                rule = literal.rule;
+            }
+        }
+        return rule;
+    }
+
+
+    private int transition(int state, char ch) {
+        int k = Arrays.binarySearch(keys[state], ch);
+        return k >= 0 ? targets[state][k] : -1;
+    }
+
+
+    private void buildAutomaton(List<Literal> literals) {
+        List<char[]> stateKeys = new ArrayList<char[]>();
+        List<int[]> stateTargets = new ArrayList<int[]>();
+        List<List<Literal>> stateOutputs = new ArrayList<List<Literal>>();
+        stateKeys.add(new char[0]);
+        stateTargets.add(new int[0]);
+        stateOutputs.add(new ArrayList<Literal>());
+        for (Literal literal : literals) {
+            int state = 0;
+            for (char ch : literal.text.toCharArray()) {
+                char[] k = stateKeys.get(state);
+                int pos = Arrays.binarySearch(k, ch);
+                if (pos >= 0) {
+                    state = stateTargets.get(state)[pos];
+                    continue;
+                }
+                pos = -pos - 1;
+                int[] t = stateTargets.get(state);
+                char[] k2 = new char[k.length + 1];
+                int[] t2 = new int[t.length + 1];
+                System.arraycopy(k, 0, k2, 0, pos);
+                System.arraycopy(t, 0, t2, 0, pos);
+                System.arraycopy(k, pos, k2, pos + 1, k.length - pos);
+                System.arraycopy(t, pos, t2, pos + 1, t.length - pos);
+                k2[pos] = ch;
+                t2[pos] = stateKeys.size();
+                stateKeys.set(state, k2);
+                stateTargets.set(state, t2);
+                state = stateKeys.size();
+                stateKeys.add(new char[0]);
+                stateTargets.add(new int[0]);
+                stateOutputs.add(new ArrayList<Literal>());
+            }
+            stateOutputs.get(state).add(literal);
+        }
+        int size = stateKeys.size();
+        keys = stateKeys.toArray(new char[size][]);
+        targets = stateTargets.toArray(new int[size][]);
+        fail = new int[size];
+        outputs = new Literal[size][];
+        outputs[0] = new Literal[0];
+        // Breadth first, so that the fallback of a state is done first.
+        Queue<Integer> queue = new LinkedList<Integer>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            List<Literal> out = stateOutputs.get(state);
+            out.addAll(Arrays.asList(outputs[fail[state]]));
+            outputs[state] = out.toArray(new Literal[out.size()]);
+            for (int k = 0; k < keys[state].length; ++k) {
+                int child = targets[state][k];
+                int f = fail[state];
+                int next = transition(f, keys[state][k]);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = transition(f, keys[state][k]);
+                }
+                fail[child] = state == 0 || next < 0 ? 0 : next;
+                queue.add(child);
+            }
+        }
+    }
+
+
+    /**
+     * A literal rule.
+     */
+    private static final class Literal {
+
+        private final String text;
+
+        private final int rule;
+
+        /** Whether the literal has to match the trimmed line. */
+        private final boolean wholeLine;
+
+
+        Literal(String text, int rule, boolean wholeLine) {
+            this.text = text;
+            this.rule = rule;
+            this.wholeLine = wholeLine;
+        }
+
+    }
+
+}
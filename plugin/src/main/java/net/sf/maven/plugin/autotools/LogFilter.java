@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.Serializable;
+
+
+/**
+ * A rule suppressing or reclassifying lines of child process output.
+ * Exactly one of <code>contains</code>, <code>line</code> and
+ * <code>pattern</code> is set, e.g.
+ *
+ * &lt;logFilter&gt;
+ *     &lt;pattern&gt;warning: .* is deprecated&lt;/pattern&gt;
+ *     &lt;level&gt;info&lt;/level&gt;
+ * &lt;/logFilter&gt;
+ */
+public class LogFilter
+implements Serializable {
+
+    /** */
+    private static final long serialVersionUID = -3604513327706254722L;
+
+    /** A text contained in matching lines. */
+    private String contains;
+
+    /** The text of matching lines, without leading and trailing blanks. */
+    private String line;
+
+    /** A regular expression found in matching lines. */
+    private String pattern;
+
+    /** 'suppress', 'info', 'warn' or 'error'. */
+    private String level = "suppress";
+
+    /** 'stdout', 'stderr' or <code>null</code> for both. */
+    private String stream;
+
+
+    public LogFilter() {
+    }
+
+
+    LogFilter(String contains, String line, String level, String stream) {
+        this.contains = contains;
+        this.line = line;
+        this.level = level;
+        this.stream = stream;
+    }
+
+
+    public String getContains() {
+        return contains;
+    }
+
+
+    public void setContains(String contains) {
+        this.contains = contains;
+    }
+
+
+    public String getLine() {
+        return line;
+    }
+
+
+    public void setLine(String line) {
+        this.line = line;
+    }
+
+
+    public String getPattern() {
+        return pattern;
+    }
+
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+
+    public String getLevel() {
+        return level;
+    }
+
+
+    public void setLevel(String level) {
+        this.level = level;
+    }
+
+
+    public String getStream() {
+        return stream;
+    }
+
+
+    public void setStream(String stream) {
+        this.stream = stream;
+    }
+
+
+    /**
+     * Returns whether this rule applies to a stream.
+     *
+     * @param stderr whether the stream is the standard error output
+     * @return whether the rule applies
+     * @throws IllegalArgumentException if the stream is unknown
+     */
+    boolean appliesTo(boolean stderr) {
+        if (stream == null) {
+            return true;
+        } else if ("stdout".equals(stream)) {
+            return !stderr;
+        } else if ("stderr".equals(stream)) {
+            return stderr;
+        }
+        throw new IllegalArgumentException(
+                "Unknown stream '" + stream + "' in log filter " + this);
+    }
+
+
+    @Override
+    public String toString() {
+        if (pattern != null) {
+            return "pattern '" + pattern + "'";
+        } else if (line != null) {
+            return "line '" + line + "'";
+        }
+        return "contains '" + contains + "'";
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Writes the output of child processes, with timestamps, to a compressed
+ * log file per build step, e.g. <code>make.log.gz</code>.  Every block of
+ * lines is a gzip member of its own, and <code>make.log.idx</code> lists
+ * the first line and the file offset of each member, so that lines can be
+ * read back without decompressing the whole log.
+ */
+final class LogSpool {
+
+    /** The number of lines per gzip member. */
+    private static final int BLOCK_LINES = 1024;
+
+    /** */
+    private final File logDirectory;
+
+    /** The compressed log of the current step. */
+    private File log;
+
+    /** */
+    private CountingOutputStream file;
+
+    /** */
+    private Writer index;
+
+    /** The current gzip member, <code>null</code> between members. */
+    private Writer member;
+
+    /** The number of lines written in the current step. */
+    private long lines;
+
+    /** The number of lines written to the current member. */
+    private int memberLines;
+
+    /** */
+    private long stepStart;
+
+
+    /**
+     * Creates a log spool.
+     *
+     * @param logDirectory the directory of the log files
+     */
+    LogSpool(File logDirectory) {
+        this.logDirectory = logDirectory;
+    }
+
+
+    /**
+     * Ends the current step, if any, and starts writing to the log of
+     * another one.
+     *
+     * @param step the name of the step
+     * @throws IOException if the log can not be created
+     */
+    synchronized void startStep(String step)
+    throws IOException {
+        close();
+        logDirectory.mkdirs();
+        log = new File(logDirectory, step + ".log.gz");
+        file = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(log)));
+        index = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(indexFile(log)), "UTF-8"));
+        lines = 0;
+        stepStart = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Returns the log of the current step.
+     *
+     * @return the log or <code>null</code> if no step has been started
+     */
+    synchronized File getLog() {
+        return log;
+    }
+
+
+    /**
+     * Writes a line to the log of the current step.
+     *
+     * @param stderr whether the line is standard error output
+     * @param line the line
+     * @throws IOException if the line can not be written
+     */
+    synchronized void write(boolean stderr, String line)
+    throws IOException {
+        if (file == null) {
+            return;
+        }
+        if (member == null) {
+            index.write(lines + " " + file.count + "\n");
+            member = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FilterOutputStream(file) {
+                        @Override
+                        public void write(byte[] b, int off, int len)
+                        throws IOException {
+                            out.write(b, off, len);
+                        }
+
+                        @Override
+                        public void close()
+                        throws IOException {
+                            flush();
+                        }
+                    }), "UTF-8"));
+            memberLines = 0;
+        }
+        long elapsed = System.currentTimeMillis() - stepStart;
+        long millis = elapsed % 1000;
+        member.write(Long.toString(elapsed / 1000));
+        member.write(millis < 10 ? ".00" : millis < 100 ? ".0" : ".");
+        member.write(Long.toString(millis));
+        member.write(stderr ? " E " : " O ");
+        member.write(line);
+        member.write('\n');
+        ++lines;
+        if (++memberLines == BLOCK_LINES) {
+            endMember();
+        }
+    }
+
+
+    /**
+     * Returns the last lines of the current or, once closed, the last
+     * step.
+     *
+     * @param count the maximum number of lines
+     * @return the lines
+     * @throws IOException if the log can not be read
+     */
+    synchronized List<String> tail(int count)
+    throws IOException {
+        if (log == null || lines == 0) {
+            return new ArrayList<String>();
+        }
+        if (file != null) {
+            endMember();
+            index.flush();
+        }
+        long first = Math.max(0, lines - count);
+        return readLines(log, first, (int) (lines - first));
+    }
+
+
+    /**
+     * Ends the current step.
+     *
+     * @throws IOException if the log can not be written
+     */
+    synchronized void close()
+    throws IOException {
+        if (file == null) {
+            return;
+        }
+        try {
+            endMember();
+        } finally {
+            file.close();
+            index.close();
+            file = null;
+            index = null;
+        }
+    }
+
+
+    /**
+     * Reads lines from a log, decompressing only the members holding
+     * them.
+     *
+     * @param log the compressed log
+     * @param first the number of the first line, starting with 0
+     * @param count the maximum number of lines
+     * @return the lines
+     * @throws IOException if the log or its index can not be read
+     */
+    static List<String> readLines(File log, long first, int count)
+    throws IOException {
+        long memberLine = 0;
+        long offset = 0;
+        BufferedReader idx = new BufferedReader(new InputStreamReader(
+                new FileInputStream(indexFile(log)), "UTF-8"));
+        try {
+            String entry;
+            while ((entry = idx.readLine()) != null) {
+                int blank = entry.indexOf(' ');
+                long line = Long.parseLong(entry.substring(0, blank));
+                if (line > first) {
+                    break;
+                }
+                memberLine = line;
+                offset = Long.parseLong(entry.substring(blank + 1));
+            }
+        } finally {
+            idx.close();
+        }
+        List<String> result = new ArrayList<String>();
+        FileInputStream in = new FileInputStream(log);
+        try {
+            in.getChannel().position(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(in), "UTF-8"));
+            String line;
+            while (result.size() < count
+                   && (line = reader.readLine()) != null) {
+                if (memberLine++ >= first) {
+                    result.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+
+    private static File indexFile(File log) {
+        String name = log.getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return new File(log.getParentFile(), name + ".idx");
+    }
+
+
+    private void endMember()
+    throws IOException {
+        if (member != null) {
+            member.close();
+            member = null;
+            file.flush();
+        }
+    }
+
+
+    /**
+     * Counts the bytes written, giving the offsets of the gzip members.
+     */
+    private static final class CountingOutputStream
+    extends FilterOutputStream {
+
+        private long count;
+
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+
+        @Override
+        public void write(int b)
+        throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.StringUtils;
+
+
+/**
+ * Builds the shell command lines used to run 'make'.
+ */
+public final class MakeInvocation {
+
+    /** Asks for output synchronization if make supports it. */
+    static final String AUTO = "auto";
+
+    /** The output synchronization used by {@link #AUTO}. */
+    private static final String AUTO_OUTPUT_SYNC = "target";
+
+    /** The version in the output of 'make --version'. */
+    private static final Pattern GNU_MAKE_VERSION =
+        Pattern.compile("GNU Make (\\d+)\\.");
+
+    /** The output of 'make --version', once known. */
+    private static String makeVersion;
+
+    /** */
+    private int jobs;
+
+    /** */
+    private float loadAverage;
+
+    /** */
+    private String outputSync;
+
+    /** */
+    private boolean jobserver;
+
+
+    /**
+     * Creates a make invocation.
+     *
+     * @param jobs the number of parallel jobs; zero or less means one job
+     *             per available processor
+     * @param loadAverage the maximum load average at which make starts
+     *                    new jobs; zero means the number of jobs, a
+     *                    negative value disables the limit
+     * @param outputSync the argument to make's '--output-sync' option;
+     *                   <code>null</code>, the empty string or "none"
+     *                   disable output synchronization, "auto" uses
+     *                   "target" if make is GNU make 4.0 or later
+     */
+    public MakeInvocation(int jobs, float loadAverage, String outputSync) {
+        this.jobs = jobs > 0
+            ? jobs : Runtime.getRuntime().availableProcessors();
+        this.loadAverage = loadAverage == 0 ? this.jobs : loadAverage;
+        this.outputSync = outputSync;
+    }
+
+
+    /**
+     * Returns the number of parallel jobs.
+     *
+     * @return the number of jobs
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+
+    /**
+     * Joins the jobserver shared by the whole build.  The resulting
+     * commands leave the number of jobs to the jobserver.  There is no
+     * jobserver on Windows, where a warning is logged instead.
+     *
+     * @param environment the environment of the build
+     * @param minimumFreeMemory the free memory in bytes below which the
+     *                          jobserver withholds tokens, zero for no limit
+     * @param log receives the warning
+     * @return the jobserver or <code>null</code> on Windows
+     * @throws IOException if the jobserver can not be created
+     */
+    public Jobserver joinJobserver(Environment environment,
+                                   long minimumFreeMemory,
+                                   Log log)
+    throws IOException {
+        if (environment.isWindows()) {
+            log.warn("The shared make jobserver is not supported on Windows");
+            return null;
+        }
+        Jobserver js = Jobserver.getJobserver(jobs);
+        if (minimumFreeMemory > 0) {
+            js.setMinimumFreeMemory(minimumFreeMemory);
+        }
+        jobserver = true;
+        return js;
+    }
+
+
+    /**
+     * Returns the shell command that runs make for the given targets.
+     *
+     * @param targets the make targets, may be empty
+     * @return the command line
+     */
+    public String command(String... targets) {
+        StringBuilder sb = new StringBuilder("make");
+        if (jobserver || jobs > 1) {
+            if (!jobserver) {
+                sb.append(" -j").append(jobs);
+                if (loadAverage > 0) {
+                    sb.append(" -l").append(formatLoadAverage());
+                }
+            }
+            String sync = AUTO.equals(outputSync)
+                ? autoOutputSync(makeVersion()) : outputSync;
+            if (!StringUtils.isEmpty(sync) && !"none".equals(sync)) {
+                sb.append(" --output-sync=").append(sync);
+            }
+        }
+        for (String target : targets) {
+            sb.append(' ').append(target);
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Returns the output synchronization "auto" stands for with the given
+     * make.  Older versions of GNU make, such as 3.81 on Mac OS X, and
+     * other makes reject '--output-sync'.
+     *
+     * @param version the output of 'make --version', empty if it failed
+     * @return the argument to '--output-sync' or <code>null</code>
+     */
+    static String autoOutputSync(String version) {
+        Matcher matcher = GNU_MAKE_VERSION.matcher(version);
+        if (matcher.find() && Integer.parseInt(matcher.group(1)) >= 4) {
+            return AUTO_OUTPUT_SYNC;
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the output of 'make --version', run once per JVM.
+     */
+    private static synchronized String makeVersion() {
+        if (makeVersion == null) {
+            makeVersion = "";
+            try {
+                Process process = new ProcessBuilder("make", "--version")
+                    .redirectErrorStream(true)
+                    .start();
+                process.getOutputStream().close();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                InputStream in = process.getInputStream();
+                try {
+                    byte[] buffer = new byte[4096];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+                if (process.waitFor() == 0) {
+                    makeVersion = out.toString("UTF-8");
+                }
+            } catch (IOException ex) {
+                // No make on the PATH, 'make' will fail later on.
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return makeVersion;
+    }
+
+
+    private String formatLoadAverage() {
+        if (loadAverage == (int) loadAverage) {
+            return Integer.toString((int) loadAverage);
+        }
+        return Float.toString(loadAverage);
+    }
+
+}
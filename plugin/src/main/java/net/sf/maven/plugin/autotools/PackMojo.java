@@ -19,6 +19,7 @@
 package net.sf.maven.plugin.autotools;
 
 import java.io.File;
+import java.util.Map;
 
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
@@ -40,6 +41,7 @@ import org.codehaus.plexus.archiver.jar.JarArchiver;
  *
  * @goal jar
  * @phase package
+ * @threadSafe
  * @requiresProject
  * @description packing of native artifacts in a jar
  */
@@ -74,6 +76,15 @@ extends AbstractMojo {
      */
     private String finalName;
 
+    /**
+     * Alternative names for target platforms, see the compile goal. Taken
+     * from the executions of the compile goal if not set; the build fails
+     * if the two differ.
+     *
+     * @parameter
+     */
+    private Map<String,String> platformMapping;
+
     /**
      * The Jar archiver.
      *
@@ -103,6 +114,15 @@ extends AbstractMojo {
      */
     private MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
 
+    /**
+     * The build session; typed as Object so that the plugin does not
+     * depend on maven-core.
+     *
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private Object session;
+
     /**
      * Used to avoid running this mojo multiple times with exactly the
      * same configuration.
@@ -116,7 +136,8 @@ extends AbstractMojo {
      */
     public void execute()
     throws MojoExecutionException {
-        if (repeated.alreadyRun(getClass().getName(),
+        if (repeated.alreadyRun(session,
+                                getClass().getName(),
                                 installDirectory,
                                 outputDirectory)) {
             getLog().info("Skipping repeated execution");
@@ -125,9 +146,11 @@ extends AbstractMojo {
         // Nudge archiver to use the mode of the input file system
         jarArchiver.setDefaultFileMode( 0 );
         jarArchiver.setDefaultDirectoryMode( 0 );
-        File jarFile = createArchive();
-        Environment environment = Environment.getEnvironment();
+        Environment environment =
+            Environment.getEnvironment().withPlatformMapping(
+                    PlatformMappings.resolve(project, "jar", platformMapping));
         String classifier = environment.getClassifier();
+        File jarFile = createArchive(classifier);
         projectHelper.attachArtifact(project, "jar", classifier, jarFile);
     }
 
@@ -144,15 +167,13 @@ extends AbstractMojo {
     /**
      * Creates the archive.
      *
+     * @param classifier the attachment classifier
      * @return the JAR archive
      * @throws MojoExecutionException if an error occurs
      */
-    private File createArchive()
+    private File createArchive(String classifier)
     throws MojoExecutionException {
-        Environment environment = Environment.getEnvironment();
-        File jarFile =
-            makeJarFile(outputDirectory, finalName,
-                        environment.getClassifier());
+        File jarFile = makeJarFile(outputDirectory, finalName, classifier);
         MavenArchiver archiver = new MavenArchiver();
         archiver.setArchiver(jarArchiver);
         archiver.setOutputFile(jarFile);
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+
+/**
+ * Finds the platform mapping of the compile goal in the project model, so
+ * that the goals packing and unpacking native artifacts use the same
+ * classifier as the compile goal, whatever order they run in.
+ */
+final class PlatformMappings {
+
+    /** */
+    private static final String PLUGIN_KEY =
+        "net.sf.maven-autotools:maven-autotools-plugin";
+
+    /** */
+    private static final String COMPILE_GOAL = "compile";
+
+    /** */
+    private static final String PLATFORM_MAPPING = "platformMapping";
+
+
+    private PlatformMappings() {
+    }
+
+
+    /**
+     * Returns the platform mapping a goal is to use: its own if it has
+     * one, that of the compile goal otherwise.
+     *
+     * @param project the project
+     * @param goal the name of the goal, for the error message
+     * @param own the platform mapping of the goal, may be <code>null</code>
+     * @return the platform mapping
+     * @throws MojoExecutionException if the goal has a platform mapping
+     *                                that differs from the compile goal's
+     */
+    static Map<String, String> resolve(MavenProject project,
+                                       String goal,
+                                       Map<String, String> own)
+    throws MojoExecutionException {
+        Map<String, String> compile = ofCompileGoal(project);
+        if (own == null) {
+            own = new HashMap<String, String>();
+        }
+        if (compile == null) {
+            return own;
+        }
+        if (own.isEmpty()) {
+            return compile;
+        }
+        if (!compile.equals(own)) {
+            Environment environment = Environment.getEnvironment();
+            throw new MojoExecutionException(
+                    "The platformMapping of the " + goal + " goal differs"
+                    + " from that of the compile goal, which would give the"
+                    + " native artifacts the classifier '"
+                    + environment.withPlatformMapping(own).getClassifier()
+                    + "' instead of '"
+                    + environment.withPlatformMapping(compile).getClassifier()
+                    + "'; configure platformMapping for the plugin instead"
+                    + " of single executions");
+        }
+        return own;
+    }
+
+
+    /**
+     * Returns the platform mapping configured for the executions of the
+     * compile goal.
+     *
+     * @param project the project
+     * @return the platform mapping, empty if there is none, or
+     *         <code>null</code> if the project has no execution of the
+     *         compile goal
+     * @throws MojoExecutionException if several executions of the compile
+     *                                goal have different platform mappings
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> ofCompileGoal(MavenProject project)
+    throws MojoExecutionException {
+        Map<String, String> mapping = null;
+        List<Plugin> plugins = project.getBuildPlugins();
+        if (plugins == null) {
+            return null;
+        }
+        for (Plugin plugin : plugins) {
+            if (!PLUGIN_KEY.equals(plugin.getKey())) {
+                continue;
+            }
+            Map<String, String> common = new HashMap<String, String>();
+            read(plugin.getConfiguration(), common);
+            Map<String, String> previous = null;
+            for (PluginExecution execution
+                    : (List<PluginExecution>) plugin.getExecutions()) {
+                if (!execution.getGoals().contains(COMPILE_GOAL)) {
+                    continue;
+                }
+                Map<String, String> merged =
+                    new HashMap<String, String>(common);
+                read(execution.getConfiguration(), merged);
+                if (previous != null && !previous.equals(merged)) {
+                    throw new MojoExecutionException(
+                            "The executions of the compile goal have"
+                            + " different platform mappings");
+                }
+                previous = merged;
+            }
+            if (previous != null) {
+                mapping = previous;
+            }
+        }
+        return mapping;
+    }
+
+
+    private static void read(Object configuration,
+                             Map<String, String> mapping) {
+        if (!(configuration instanceof Xpp3Dom)) {
+            return;
+        }
+        Xpp3Dom platformMapping =
+            ((Xpp3Dom) configuration).getChild(PLATFORM_MAPPING);
+        if (platformMapping == null) {
+            return;
+        }
+        for (Xpp3Dom entry : platformMapping.getChildren()) {
+            mapping.put(entry.getName(), entry.getValue());
+        }
+    }
+
+}
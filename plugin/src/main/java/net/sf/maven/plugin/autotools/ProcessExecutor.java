@@ -19,6 +19,7 @@ package net.sf.maven.plugin.autotools;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 
 
@@ -43,6 +44,16 @@ public interface ProcessExecutor {
     void setStderr(OutputStream stderr);
 
 
+    /**
+     * Set the jobserver that child processes share.  Each child process
+     * holds one of its tokens while it runs and make children join the
+     * jobserver through MAKEFLAGS.
+     *
+     * @param jobserver the jobserver or <code>null</code> for none
+     */
+    void setJobserver(Jobserver jobserver);
+
+
     /**
      * Executes the specified command in a child process passing stdout
      * and stderr to System.out and System.err respectively.
@@ -60,5 +71,24 @@ public interface ProcessExecutor {
             File workingDirectory)
     throws IOException, InterruptedException;
 
-}
 
+
+    /**
+     * Executes the specified shell commands one after the other in a
+     * single shell, stopping at the first command that fails.
+     *
+     * @param commands the shell commands
+     * @param env the environment variables
+     * @param workingDirectory the working directory (getcwd)
+     * @return the durations of the commands in milliseconds
+     * @throws IOException if an I/O error occurs or if a command fails;
+     *                     the message names the failing command
+     * @throws InterruptedException if the child process is interrupted
+     */
+    long[] execBatch(
+            List<String> commands,
+            Map<String, String> env,
+            File workingDirectory)
+    throws IOException, InterruptedException;
+
+}
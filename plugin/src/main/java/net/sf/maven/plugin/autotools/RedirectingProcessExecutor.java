@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Running child processes whose output is written to log files by the
+ * operating system, without passing through this process.  Afterwards,
+ * the tail of the standard error output is copied to the standard error
+ * stream, and so is the tail of the standard output if the child process
+ * fails.  These tails are all the streams set on this executor see of the
+ * output, so log filters, spooling and diagnostics do not apply to it.
+ * The output of command batches is passed through this process instead,
+ * so that the step markers are taken out before it is written to the
+ * log files.
+ */
+public class RedirectingProcessExecutor
+extends DefaultProcessExecutor {
+
+    /** The most standard error output copied per child process. */
+    private static final int STDERR_TAIL = 64 * 1024;
+
+    /** The most standard output copied per failed child process. */
+    private static final int STDOUT_TAIL = 4 * 1024;
+
+    /** */
+    private File stdoutLog;
+
+    /** */
+    private File stderrLog;
+
+
+    /**
+     * Creates a process executor writing to the log files
+     * <code>name.out.log</code> and <code>name.err.log</code> in the
+     * given directory.  Existing log files are replaced.
+     *
+     * @param logDirectory the log directory
+     * @param name the base name of the log files
+     * @throws IOException if the log directory can not be created
+     */
+    public RedirectingProcessExecutor(File logDirectory, String name)
+    throws IOException {
+        if (!logDirectory.isDirectory() && !logDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + logDirectory);
+        }
+        stdoutLog = new File(logDirectory, name + ".out.log");
+        stderrLog = new File(logDirectory, name + ".err.log");
+        stdoutLog.delete();
+        stderrLog.delete();
+    }
+
+
+    /**
+     * Returns the log file of the standard output.
+     *
+     * @return the log file
+     */
+    public File getStdoutLog() {
+        return stdoutLog;
+    }
+
+
+    /**
+     * Returns the log file of the standard error output.
+     *
+     * @return the log file
+     */
+    public File getStderrLog() {
+        return stderrLog;
+    }
+
+
+    @Override
+    protected int runProcess(
+            String[] command,
+            Map<String, String> env,
+            File workingDirectory,
+            OutputStream out,
+            OutputStream err)
+    throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(workingDirectory);
+        if (env != null) {
+            builder.environment().clear();
+            builder.environment().putAll(env);
+        }
+        builder.redirectOutput(Redirect.appendTo(stdoutLog));
+        builder.redirectError(Redirect.appendTo(stderrLog));
+        long stdoutOffset = stdoutLog.length();
+        long stderrOffset = stderrLog.length();
+        Process process = builder.start();
+        process.getOutputStream().close();
+        int status = waitFor(process);
+        copyTail(stderrLog, stderrOffset, STDERR_TAIL, err);
+        if (status != 0) {
+            copyTail(stdoutLog, stdoutOffset, STDOUT_TAIL, out);
+        }
+        return status;
+    }
+
+
+    /**
+     * Executes the specified shell commands one after the other in a
+     * single shell, appending their output to the log files without the
+     * step markers.
+     *
+     * @param commands the shell commands
+     * @param env the environment variables
+     * @param workingDirectory the working directory (getcwd)
+     * @return the durations of the commands in milliseconds
+     * @throws IOException if an I/O error occurs or if a command fails
+     * @throws InterruptedException if the child process is interrupted
+     */
+    @Override
+    public long[] execBatch(
+            List<String> commands,
+            Map<String, String> env,
+            File workingDirectory)
+    throws IOException, InterruptedException {
+        long stdoutOffset = stdoutLog.length();
+        long stderrOffset = stderrLog.length();
+        DefaultProcessExecutor pumping = new DefaultProcessExecutor() {
+            @Override
+            protected IOException failure(String[] command, int status) {
+                return RedirectingProcessExecutor.this.failure(command,
+                                                               status);
+            }
+        };
+        pumping.setJobserver(getJobserver());
+        OutputStream stdout = new FileOutputStream(stdoutLog, true);
+        boolean failed = true;
+        try {
+            OutputStream stderr = new FileOutputStream(stderrLog, true);
+            try {
+                pumping.setStdout(stdout);
+                pumping.setStderr(stderr);
+                long[] durations =
+                    pumping.execBatch(commands, env, workingDirectory);
+                failed = false;
+                return durations;
+            } finally {
+                stderr.close();
+            }
+        } finally {
+            stdout.close();
+            copyTail(stderrLog, stderrOffset, STDERR_TAIL, getStderr());
+            if (failed) {
+                copyTail(stdoutLog, stdoutOffset, STDOUT_TAIL, getStdout());
+            }
+        }
+    }
+
+
+    @Override
+    protected IOException failure(String[] command, int status) {
+        return new IOException(
+                super.failure(command, status).getMessage()
+                + ", see " + stdoutLog + " and " + stderrLog);
+    }
+
+
+    /**
+     * Copies at most the last <code>limit</code> bytes that have been
+     * appended to a log file since the given offset, starting with a
+     * complete line.
+     */
+    private static void copyTail(File log,
+                                 long offset,
+                                 int limit,
+                                 OutputStream out)
+    throws IOException {
+        RandomAccessFile file = new RandomAccessFile(log, "r");
+        try {
+            long end = file.length();
+            long start = Math.max(offset, end - limit);
+            byte[] buf = new byte[(int) (end - start)];
+            file.seek(start);
+            file.readFully(buf);
+            int first = 0;
+            if (start > offset) {
+                while (first < buf.length && buf[first++] != '\n') {
+                    continue;
+                }
+            }
+            if (first < buf.length) {
+                out.write(buf, first, buf.length - first);
+                out.flush();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+}
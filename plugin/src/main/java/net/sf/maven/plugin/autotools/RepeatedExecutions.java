@@ -18,7 +18,9 @@ package net.sf.maven.plugin.autotools;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 
 /**
@@ -27,16 +29,28 @@ import java.util.Set;
 public final class RepeatedExecutions {
 
     /**
-     * Remember if a mojo has already been run with exactly a
-     * certain configuration.
+     * Stands in for the build session if a mojo has not been given one.
      */
-    private static Set<String> seenConfigurations = new HashSet<String>();
+    private static final Object NO_SESSION = new Object();
+
+    /**
+     * Remember per build session if a mojo has already been run with
+     * exactly a certain configuration.
+     */
+    private static final Map<Object, Set<String>> seenConfigurations =
+        new WeakHashMap<Object, Set<String>>();
 
 
     /**
+     * Returns whether a mojo has already been run with the given
+     * configuration in the given build session and remembers the
+     * configuration otherwise.  Safe to call from parallel builds.
      *
+     * @param session the build session, may be <code>null</code>
+     * @param elements the configuration
+     * @return <code>true</code> if the configuration has been seen before
      */
-    public boolean alreadyRun(Object... elements) {
+    public boolean alreadyRun(Object session, Object... elements) {
         StringBuffer sb = new StringBuffer();
         for (Object element : elements) {
             sb.append(':');
@@ -47,11 +61,15 @@ public final class RepeatedExecutions {
             }
         }
         String fp = sb.toString();
-        if (seenConfigurations.contains(fp)) {
-            return true;
+        synchronized (seenConfigurations) {
+            Object key = session != null ? session : NO_SESSION;
+            Set<String> seen = seenConfigurations.get(key);
+            if (seen == null) {
+                seen = new HashSet<String>();
+                seenConfigurations.put(key, seen);
+            }
+            return !seen.add(fp);
         }
-        seenConfigurations.add(fp);
-        return false;
     }
 
 }
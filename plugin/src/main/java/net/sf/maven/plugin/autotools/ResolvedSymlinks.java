@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Remembers symlinks that have already been resolved.  Meant to live for
+ * a single mojo execution, during which the links themselves do not
+ * change; whether their targets exist is checked on every call.
+ */
+public final class ResolvedSymlinks {
+
+    /** Resolved links, or <code>null</code> for paths that are no links. */
+    private final Map<File, File> resolved = new HashMap<File, File>();
+
+
+    /**
+     * Registers staged files that stand for source files without being
+     * symlinks, such as hard links or copies, so that they are treated
+     * like links to those source files.
+     *
+     * @param stagedFiles the source files by staged file
+     * @throws IOException if a source file can not be canonicalized
+     */
+    public synchronized void addStagedFiles(Map<File, File> stagedFiles)
+    throws IOException {
+        for (Map.Entry<File, File> entry : stagedFiles.entrySet()) {
+            resolved.put(entry.getKey(), entry.getValue().getCanonicalFile());
+        }
+    }
+
+
+    /**
+     * Resolves a symlink.
+     *
+     * @param link the symlink
+     * @return the canonical target of the link
+     * @throws IOException if the path is not a symlink
+     * @see SymlinkUtils#resolveSymlink(File)
+     */
+    public synchronized File resolve(File link)
+    throws IOException {
+        File target;
+        if (resolved.containsKey(link)) {
+            target = resolved.get(link);
+        } else {
+            try {
+                target = SymlinkUtils.resolveSymlink(link);
+            } catch (IOException ex) {
+                target = null;
+            }
+            resolved.put(link, target);
+        }
+        if (target == null) {
+            throw new IOException("Symbolic link not found " + link);
+        }
+        return target;
+    }
+
+
+    /**
+     * Like {@link FileUtils#fileExists(File, String)}, but resolves each
+     * link only once.
+     *
+     * @param directory the directory
+     * @param name the name of the link
+     * @return whether the link exists and points to an existing file
+     */
+    public boolean fileExists(File directory, String name) {
+        try {
+            return resolve(new File(directory, name)).exists();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+}
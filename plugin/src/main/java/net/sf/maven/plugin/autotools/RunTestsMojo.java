@@ -18,17 +18,17 @@ package net.sf.maven.plugin.autotools;
 
 import java.io.File;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 
 
 /**
  * @goal test
  * @phase test
+ * @threadSafe
  * @description run 'make check'
  */
 public final class RunTestsMojo
-extends AbstractMojo {
+extends AbstractMakeMojo {
 
     /**
      * The working directory.
@@ -38,9 +38,13 @@ extends AbstractMojo {
     private File workingDirectory;
 
     /**
-     * Used to run child processes.
+     * The build session; typed as Object so that the plugin does not
+     * depend on maven-core.
+     *
+     * @parameter expression="${session}"
+     * @readonly
      */
-    private ProcessExecutor exec = new DefaultProcessExecutor();
+    private Object session;
 
     /**
      * Used to avoid running this mojo multiple times with exactly the
@@ -55,32 +59,33 @@ extends AbstractMojo {
      */
     public void execute()
     throws MojoExecutionException {
-        if (repeated.alreadyRun(getClass().getName(),
+        if (repeated.alreadyRun(session,
+                                getClass().getName(),
                                 workingDirectory)) {
             getLog().info("Skipping repeated execution");
             return;
         }
-        initLogging();
+        initLogging("check");
+        boolean failed = true;
         try {
             workingDirectory.mkdirs();
+            MakeInvocation make =
+                makeInvocation(Environment.getEnvironment());
             String[] makeCheckCommand = {
-                    "make",
-                    "check"
+                    "sh", "-c", make.command("check")
             };
+            logAdapter.startStep("check");
             exec.execProcess(makeCheckCommand,
                              null,
                              workingDirectory);
+            failed = false;
         } catch (Exception ex) {
             throw new MojoExecutionException("Failed to run \"make\"", ex);
+        } finally {
+            leaveJobserver();
+            closeLogging(failed);
         }
     }
 
-
-    private void initLogging() {
-        StreamLogAdapter sla = new StreamLogAdapter(getLog());
-        exec.setStdout(sla.getStdout());
-        exec.setStderr(sla.getStderr());
-    }
-
 }
 
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * A long-lived 'sh' process running one command after the other.  Each
+ * command is followed by a marker on stdout carrying its exit status and
+ * a marker on stderr, so that the output of consecutive commands
+ * can be told apart.  Idle shells are pooled for the whole build.
+ */
+final class ShellCoprocess {
+
+    /** Maps bytes to chars one to one. */
+    private static final String LATIN1 = "ISO-8859-1";
+
+    /** Stands in for the exit status once the shell has terminated. */
+    private static final int TERMINATED = Integer.MIN_VALUE;
+
+    /** Idle shells. */
+    private static final Deque<ShellCoprocess> IDLE =
+        new ArrayDeque<ShellCoprocess>();
+
+    /** All shells, closed when the JVM exits. */
+    private static final List<ShellCoprocess> ALL =
+        new ArrayList<ShellCoprocess>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                synchronized (IDLE) {
+                    for (ShellCoprocess shell : ALL) {
+                        shell.close();
+                    }
+                }
+            }
+        });
+    }
+
+    /** */
+    private final String marker = "--autotools-" + UUID.randomUUID() + "--";
+
+    /** */
+    private final Process process;
+
+    /** */
+    private final OutputStream stdin;
+
+    /** Receives stdout of the current command. */
+    private volatile OutputStream stdoutTarget;
+
+    /** Receives stderr of the current command. */
+    private volatile OutputStream stderrTarget;
+
+    /** The exit status of each command, once stdout reaches its marker. */
+    private final BlockingQueue<Integer> statuses =
+        new LinkedBlockingQueue<Integer>();
+
+    /** Released whenever stderr reaches a marker. */
+    private final Semaphore stderrDone = new Semaphore(0);
+
+
+    private ShellCoprocess()
+    throws IOException {
+        process = new ProcessBuilder("sh").start();
+        stdin = process.getOutputStream();
+        Thread stdoutReader = new Thread("autotools-shell-stdout") {
+            @Override
+            public void run() {
+                readStdout();
+            }
+        };
+        stdoutReader.setDaemon(true);
+        stdoutReader.start();
+        Thread stderrReader = new Thread("autotools-shell-stderr") {
+            @Override
+            public void run() {
+                readStderr();
+            }
+        };
+        stderrReader.setDaemon(true);
+        stderrReader.start();
+    }
+
+
+    /**
+     * Runs a shell command in a pooled shell.
+     *
+     * @param command the shell command
+     * @param workingDirectory the working directory, or <code>null</code>
+     *                         for that of this process
+     * @param out receives the standard output of the command
+     * @param err receives the standard error output of the command
+     * @return the exit status of the command
+     * @throws IOException if the shell fails
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              command; the shell and the command
+     *                              are killed then
+     */
+    static int execute(String command,
+                       File workingDirectory,
+                       OutputStream out,
+                       OutputStream err)
+    throws IOException, InterruptedException {
+        ShellCoprocess shell;
+        synchronized (IDLE) {
+            shell = IDLE.poll();
+        }
+        if (shell == null) {
+            shell = new ShellCoprocess();
+            synchronized (IDLE) {
+                ALL.add(shell);
+            }
+        }
+        boolean reusable = false;
+        try {
+            int status = shell.run(command, workingDirectory, out, err);
+            reusable = true;
+            return status;
+        } finally {
+            if (reusable) {
+                synchronized (IDLE) {
+                    IDLE.push(shell);
+                }
+            } else {
+                synchronized (IDLE) {
+                    ALL.remove(shell);
+                }
+                shell.close();
+            }
+        }
+    }
+
+
+    private int run(String command,
+                    File workingDirectory,
+                    OutputStream out,
+                    OutputStream err)
+    throws IOException, InterruptedException {
+        StringBuilder script = new StringBuilder("(\n");
+        if (workingDirectory != null) {
+            script.append("cd ").append(quote(workingDirectory.getPath()))
+                  .append(" || exit $?\n");
+        }
+        script.append(command).append("\n) </dev/null\n")
+              .append("printf '%s %d\\n' '").append(marker).append("' $?\n")
+              .append("printf '%s\\n' '").append(marker).append("' >&2\n");
+        stdoutTarget = out;
+        stderrTarget = err;
+        stdin.write(script.toString().getBytes());
+        stdin.flush();
+        int status;
+        try {
+            status = statuses.take().intValue();
+            if (status == TERMINATED) {
+                throw new IOException("Shell terminated unexpectedly");
+            }
+            stderrDone.acquire();
+        } catch (InterruptedException ex) {
+            DefaultProcessExecutor.destroyTree(process);
+            throw ex;
+        }
+        out.flush();
+        err.flush();
+        return status;
+    }
+
+
+    /**
+     * Copies stdout to the target of the current command, passing on the
+     * exit status at each marker.
+     */
+    private void readStdout() {
+        InputStream in = new BufferedInputStream(process.getInputStream());
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            while (readLine(in, line)) {
+                String text = line.toString(LATIN1);
+                int index = text.indexOf(marker);
+                OutputStream target = stdoutTarget;
+                if (index < 0) {
+                    line.write('\n');
+                    line.writeTo(target);
+                } else {
+                    target.write(line.toByteArray(), 0, index);
+                    statuses.add(Integer.valueOf(
+                            text.substring(index + marker.length()).trim()));
+                }
+            }
+        } catch (IOException ex) {
+            // The shell is gone, or the target failed.
+        } finally {
+            statuses.add(Integer.valueOf(TERMINATED));
+        }
+    }
+
+
+    /**
+     * Copies stderr to the target of the current command, dropping the
+     * markers.
+     */
+    private void readStderr() {
+        InputStream in = new BufferedInputStream(process.getErrorStream());
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            while (readLine(in, line)) {
+                String text = line.toString(LATIN1);
+                int index = text.indexOf(marker);
+                OutputStream target = stderrTarget;
+                if (index < 0) {
+                    line.write('\n');
+                    if (target != null) {
+                        line.writeTo(target);
+                    }
+                } else {
+                    if (target != null) {
+                        target.write(line.toByteArray(), 0, index);
+                    }
+                    stderrDone.release();
+                }
+            }
+        } catch (IOException ex) {
+            // The shell is gone, the next command will notice.
+        } finally {
+            stderrDone.release();
+        }
+    }
+
+
+    private void close() {
+        try {
+            stdin.close();
+        } catch (IOException ex) {
+        }
+        process.destroy();
+    }
+
+
+    private static boolean readLine(InputStream in, ByteArrayOutputStream line)
+    throws IOException {
+        line.reset();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return true;
+            }
+            line.write(c);
+        }
+        return line.size() > 0;
+    }
+
+
+    private static String quote(String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
+}
@@ -0,0 +1,697 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Mirrors source directories into build directories by means of symlinks,
+ * hard links or reflink copies.  The links are recorded in a manifest, so
+ * that later builds only add links for new files and remove links for
+ * deleted ones.  Directories are walked in parallel by a fork/join pool.
+ */
+public final class SourceMirror {
+
+    /** The length above which reflink copies are split up. */
+    private static final int MAX_COMMAND_LENGTH = 65536;
+
+    /**
+     * The ways a source file can be staged.
+     */
+    public enum LinkKind {
+
+        /** A symbolic link with a relative target path. */
+        SYMBOLIC('s'),
+
+        /** A hard link, falling back to a symbolic link. */
+        HARD('h'),
+
+        /**
+         * A copy sharing the data blocks of the source on file systems
+         * supporting it, falling back to a symbolic link.
+         */
+        REFLINK('r');
+
+        private final char code;
+
+
+        private LinkKind(char code) {
+            this.code = code;
+        }
+
+
+        private static LinkKind forCode(char code) {
+            for (LinkKind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            return SYMBOLIC;
+        }
+
+    }
+
+
+    /** */
+    private File manifest;
+
+    /** */
+    private int parallelism;
+
+    /** */
+    private LinkKind kind;
+
+    /** Set once reflinks turned out not to work on this file system. */
+    private volatile boolean reflinkUnsupported;
+
+    /** Runs 'cp' for reflinks. */
+    private ProcessExecutor copier = new DefaultProcessExecutor();
+
+    /** Links of the previous build by path. */
+    private Map<String, Link> previousLinks;
+
+    /** Links of this build by path. */
+    private final Map<String, Link> links = newLinkMap();
+
+    /** */
+    private AtomicInteger created = new AtomicInteger();
+
+    /** */
+    private int removed;
+
+
+    /**
+     * Creates a source mirror that stages files by symbolic links.
+     *
+     * @param manifest the file recording the links, or <code>null</code>
+     *                 to recreate all links on every build
+     * @param parallelism the number of threads walking the source
+     *                    directories; zero or less means one per available
+     *                    processor, one walks them serially
+     * @throws IOException if the manifest can not be read
+     */
+    public SourceMirror(File manifest, int parallelism)
+    throws IOException {
+        this(manifest, parallelism, LinkKind.SYMBOLIC);
+    }
+
+
+    /**
+     * Creates a source mirror.
+     *
+     * @param manifest the file recording the links, or <code>null</code>
+     *                 to recreate all links on every build
+     * @param parallelism the number of threads walking the source
+     *                    directories; zero or less means one per available
+     *                    processor, one walks them serially
+     * @param kind how to stage source files
+     * @throws IOException if the manifest can not be read
+     */
+    public SourceMirror(File manifest, int parallelism, LinkKind kind)
+    throws IOException {
+        this.manifest = manifest;
+        this.parallelism = parallelism > 0
+            ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.kind = kind;
+        previousLinks = readManifest(manifest);
+        setCopier(copier);
+    }
+
+
+    /**
+     * Sets the executor of the 'sh -c' commands copying files for
+     * reflinks, for example a {@link CoprocessExecutor}.  Its output is
+     * discarded.
+     *
+     * @param copier the process executor
+     */
+    public void setCopier(ProcessExecutor copier) {
+        TailOutputStream discarded = new TailOutputStream();
+        copier.setStdout(discarded);
+        copier.setStderr(discarded);
+        this.copier = copier;
+    }
+
+
+    /**
+     * Links all files below the source directory into the destination
+     * directory, creating subdirectories as needed.  Hidden files are
+     * skipped.
+     *
+     * @param sourceDirectory the source directory, may be <code>null</code>
+     * @param destinationDirectory the destination directory
+     * @throws IOException if a link can not be created
+     */
+    public void mirror(File sourceDirectory, File destinationDirectory)
+    throws IOException {
+        if (sourceDirectory == null) {
+            return;
+        }
+        run(new MirrorTask(sourceDirectory, destinationDirectory, false));
+    }
+
+
+    /**
+     * Links the top level entries of the source directory into the
+     * destination directory.  Subdirectories are linked as a whole,
+     * unless the destination already holds a real directory of the same
+     * name, into which they are merged the same way.  Hidden files are
+     * skipped.
+     *
+     * @param sourceDirectory the source directory, may be <code>null</code>
+     * @param destinationDirectory the destination directory
+     * @throws IOException if a link can not be created
+     */
+    public void mirrorTopLevel(File sourceDirectory, File destinationDirectory)
+    throws IOException {
+        if (sourceDirectory == null) {
+            return;
+        }
+        run(new MirrorTask(sourceDirectory, destinationDirectory, true));
+    }
+
+
+    private void run(MirrorTask task)
+    throws IOException {
+        try {
+            if (parallelism == 1) {
+                task.compute();
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(task);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } catch (MirrorException ex) {
+            throw ex.getCause();
+        }
+    }
+
+
+    /**
+     * Removes the links of the previous build that have not been mirrored
+     * by this one and records the current links in the manifest.
+     *
+     * @throws IOException if the manifest can not be written
+     */
+    public void finish()
+    throws IOException {
+        for (Map.Entry<String, Link> entry : previousLinks.entrySet()) {
+            if (!links.containsKey(entry.getKey())) {
+                File link = new File(entry.getKey());
+                if (isStaged(link, entry.getValue().kind)
+                        && !isInsideLinkedDirectory(link)
+                        && link.delete()) {
+                    ++removed;
+                }
+            }
+        }
+        previousLinks = new HashMap<String, Link>(links);
+        writeManifest(manifest, links);
+    }
+
+
+    /**
+     * Returns the staged files mirrored so far that are not symbolic links,
+     * mapped to the source files they stand for.
+     *
+     * @return the hard links and copies
+     */
+    public Map<File, File> getStagedFiles() {
+        Map<File, File> result = new HashMap<File, File>();
+        for (Map.Entry<String, Link> entry : links.entrySet()) {
+            if (entry.getValue().kind != LinkKind.SYMBOLIC) {
+                result.put(new File(entry.getKey()),
+                           new File(entry.getValue().target));
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the number of links created so far.
+     *
+     * @return the number of links created
+     */
+    public int getCreatedLinks() {
+        return created.get();
+    }
+
+
+    /**
+     * Returns the number of stale links removed by {@link #finish()}.
+     *
+     * @return the number of links removed
+     */
+    public int getRemovedLinks() {
+        return removed;
+    }
+
+
+    private void link(File link, File target)
+    throws IOException {
+        Link previous = previousLink(link, target);
+        LinkKind wanted = target.isDirectory() ? LinkKind.SYMBOLIC : kind;
+        if (previous != null && previous.kind == wanted) {
+            links.put(link.getAbsolutePath(), previous);
+            return;
+        }
+        if (target.isDirectory()) {
+            SymlinkUtils.createDirectorySymlink(link, target);
+            record(link, target, LinkKind.SYMBOLIC);
+        } else if (kind == LinkKind.HARD && createHardLink(link, target)) {
+            record(link, target, LinkKind.HARD);
+        } else {
+            linkSymbolically(link, target);
+        }
+    }
+
+
+    /**
+     * Stages files of one directory by reflinks, copying them with one
+     * command, and falls back to symbolic links if that fails.
+     */
+    private void reflink(File directory, List<File> targets)
+    throws IOException {
+        List<File> copies = new ArrayList<File>();
+        for (File target : targets) {
+            File link = new File(directory, target.getName());
+            Link previous = previousLink(link, target);
+            if (previous != null && previous.kind == LinkKind.REFLINK) {
+                links.put(link.getAbsolutePath(), previous);
+            } else {
+                copies.add(target);
+            }
+        }
+        if (copies.isEmpty()) {
+            return;
+        }
+        if (createReflinks(directory, copies)) {
+            for (File target : copies) {
+                record(new File(directory, target.getName()),
+                       target,
+                       LinkKind.REFLINK);
+            }
+        } else {
+            for (File target : copies) {
+                linkSymbolically(new File(directory, target.getName()),
+                                 target);
+            }
+        }
+    }
+
+
+    /**
+     * Stages a file by a symbolic link, keeping that of the previous
+     * build if it is still valid.
+     */
+    private void linkSymbolically(File link, File target)
+    throws IOException {
+        Link previous = previousLink(link, target);
+        if (previous != null && previous.kind == LinkKind.SYMBOLIC) {
+            links.put(link.getAbsolutePath(), previous);
+            return;
+        }
+        SymlinkUtils.createSymlink(link, target, true);
+        record(link, target, LinkKind.SYMBOLIC);
+    }
+
+
+    /**
+     * Returns the link of the previous build if it still stands for the
+     * target.
+     */
+    private Link previousLink(File link, File target)
+    throws IOException {
+        Link previous = previousLinks.get(link.getAbsolutePath());
+        if (previous != null
+                && target.getAbsolutePath().equals(previous.target)
+                && isUpToDate(link, target, previous.kind)) {
+            return previous;
+        }
+        return null;
+    }
+
+
+    private void record(File link, File target, LinkKind used) {
+        links.put(link.getAbsolutePath(),
+                  new Link(target.getAbsolutePath(), used));
+        created.incrementAndGet();
+    }
+
+
+    /**
+     * Creates a hard link under a temporary name first, so that a link
+     * of the previous build is only replaced if this succeeds.
+     */
+    private boolean createHardLink(File link, File target)
+    throws IOException {
+        Path path = link.toPath();
+        Path temp = path.resolveSibling(path.getFileName() + ".autotools-tmp");
+        try {
+            Files.deleteIfExists(temp);
+            Files.createLink(temp, target.toPath());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        } catch (InvalidPathException ex) {
+            return false;
+        } catch (IOException ex) {
+            // E.g. source and build directory on different file systems.
+            Files.deleteIfExists(temp);
+            return false;
+        }
+    }
+
+
+    /**
+     * Copies files into a directory as copy-on-write clones, with one
+     * 'cp' per batch of files rather than one per file.
+     */
+    private boolean createReflinks(File directory, List<File> targets)
+    throws IOException {
+        if (reflinkUnsupported || Environment.getEnvironment().isWindows()) {
+            return false;
+        }
+        if (directory.getAbsolutePath().indexOf('\'') >= 0) {
+            return false;
+        }
+        String prefix = "cp --reflink=always --preserve=timestamps"
+            + " --remove-destination -t '" + directory.getAbsolutePath()
+            + "' --";
+        StringBuilder command = new StringBuilder(prefix);
+        int count = 0;
+        for (File target : targets) {
+            String path = target.getAbsolutePath();
+            if (path.indexOf('\'') >= 0) {
+                return false;
+            }
+            // An existing hard link would be the same file as its source.
+            Files.deleteIfExists(new File(directory, target.getName()).toPath());
+            command.append(" '").append(path).append('\'');
+            if (++count == targets.size()
+                    || command.length() > MAX_COMMAND_LENGTH) {
+                if (!copy(command.toString())) {
+                    reflinkUnsupported = true;
+                    return false;
+                }
+                command.setLength(0);
+                command.append(prefix);
+            }
+        }
+        return true;
+    }
+
+
+    private boolean copy(String command)
+    throws IOException {
+        try {
+            copier.execProcess(new String[] {"sh", "-c", command}, null, null);
+            return true;
+        } catch (IOException ex) {
+            // The file system does not support copy-on-write clones.
+            return false;
+        } catch (InterruptedException ex) {
+            throw new IOException("Interrupted while copying sources", ex);
+        }
+    }
+
+
+    private static boolean isUpToDate(File link, File target, LinkKind kind)
+    throws IOException {
+        switch (kind) {
+        case HARD:
+            return link.exists() && Files.isSameFile(link.toPath(),
+                                                     target.toPath());
+        case REFLINK:
+            return link.isFile()
+                && !Files.isSymbolicLink(link.toPath())
+                && link.length() == target.length()
+                && link.lastModified() == target.lastModified();
+        default:
+            if (!Files.isSymbolicLink(link.toPath())) {
+                return false;
+            }
+            Path path = link.toPath().toAbsolutePath();
+            Path pointsTo = path.getParent()
+                .resolve(Files.readSymbolicLink(path))
+                .normalize();
+            return pointsTo.equals(target.toPath().toAbsolutePath().normalize());
+        }
+    }
+
+
+    private static boolean isStaged(File link, LinkKind kind) {
+        if (kind == LinkKind.SYMBOLIC) {
+            return Files.isSymbolicLink(link.toPath());
+        }
+        return link.isFile() && !Files.isSymbolicLink(link.toPath());
+    }
+
+
+    /**
+     * Tells whether the path leads through a link to a directory, in
+     * which case it denotes a file in the source tree.
+     */
+    private static boolean isInsideLinkedDirectory(File file)
+    throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        return !parent.getCanonicalFile().equals(parent);
+    }
+
+
+    private static boolean isRealDirectory(File file) {
+        return file.isDirectory() && !Files.isSymbolicLink(file.toPath());
+    }
+
+
+    /**
+     * Makes sure the given path is a real directory, replacing a link to
+     * a directory left behind by an earlier build.
+     */
+    private static void makeDirectory(File directory)
+    throws IOException {
+        if (Files.isSymbolicLink(directory.toPath())) {
+            Files.delete(directory.toPath());
+        }
+        directory.mkdir();
+    }
+
+
+    private static Map<String, Link> newLinkMap() {
+        return new ConcurrentHashMap<String, Link>();
+    }
+
+
+    private static Map<String, Link> readManifest(File manifest)
+    throws IOException {
+        Map<String, Link> result = new HashMap<String, Link>();
+        if (manifest == null || !manifest.isFile()) {
+            return result;
+        }
+        BufferedReader reader =
+            new BufferedReader(
+                    new InputStreamReader(
+                            new FileInputStream(manifest), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 2) {
+                    result.put(fields[0],
+                               new Link(fields[1], LinkKind.SYMBOLIC));
+                } else if (fields.length == 3 && fields[2].length() == 1) {
+                    LinkKind kind = LinkKind.forCode(fields[2].charAt(0));
+                    result.put(fields[0], new Link(fields[1], kind));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+
+    private static void writeManifest(File manifest, Map<String, Link> links)
+    throws IOException {
+        if (manifest == null) {
+            return;
+        }
+        manifest.getParentFile().mkdirs();
+        PrintWriter writer =
+            new PrintWriter(
+                    new OutputStreamWriter(
+                            new FileOutputStream(manifest), "UTF-8"));
+        try {
+            for (Map.Entry<String, Link> entry : links.entrySet()) {
+                writer.print(entry.getKey());
+                writer.print('\t');
+                writer.print(entry.getValue().target);
+                writer.print('\t');
+                writer.print(entry.getValue().kind.code);
+                writer.print('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Failed to write " + manifest);
+        }
+    }
+
+
+    /**
+     * A staged file.
+     */
+    private static final class Link {
+
+        private final String target;
+
+        private final LinkKind kind;
+
+
+        Link(String target, LinkKind kind) {
+            this.target = target;
+            this.kind = kind;
+        }
+
+    }
+
+
+    /**
+     * Mirrors one directory and forks a task for each subdirectory.
+     */
+    private final class MirrorTask
+    extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File sourceDirectory;
+
+        private final File destinationDirectory;
+
+        private final boolean topLevel;
+
+
+        MirrorTask(File sourceDirectory,
+                   File destinationDirectory,
+                   boolean topLevel) {
+            this.sourceDirectory = sourceDirectory;
+            this.destinationDirectory = destinationDirectory;
+            this.topLevel = topLevel;
+        }
+
+
+        @Override
+        protected void compute() {
+            File[] files = sourceDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            List<MirrorTask> subtasks = new ArrayList<MirrorTask>();
+            List<File> reflinks = new ArrayList<File>();
+            try {
+                for (File file : files) {
+                    if (file.getName().startsWith(".")) {
+                        continue; // TODO: this might be to broad
+                    }
+                    if (file.isDirectory()) {
+                        File childDestinationDirectory =
+                              new File(destinationDirectory, file.getName());
+                        if (topLevel
+                                && !isRealDirectory(childDestinationDirectory)) {
+                            link(childDestinationDirectory, file);
+                            continue;
+                        }
+                        makeDirectory(childDestinationDirectory);
+                        subtasks.add(
+                                new MirrorTask(file,
+                                               childDestinationDirectory,
+                                               topLevel));
+                    } else if (kind == LinkKind.REFLINK && file.isFile()) {
+                        reflinks.add(file);
+                    } else if (file.isFile()) {
+                        File link =
+                            new File(destinationDirectory, file.getName());
+                        link(link, file);
+                    }
+                }
+                if (!reflinks.isEmpty()) {
+                    reflink(destinationDirectory, reflinks);
+                }
+            } catch (IOException ex) {
+                throw new MirrorException(ex);
+            }
+            if (parallelism == 1) {
+                for (MirrorTask subtask : subtasks) {
+                    subtask.compute();
+                }
+            } else {
+                invokeAll(subtasks);
+            }
+        }
+
+    }
+
+
+    /**
+     * Carries an I/O error out of a fork/join task.
+     */
+    private static final class MirrorException
+    extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+
+        MirrorException(IOException cause) {
+            super(cause);
+        }
+
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+
+    }
+
+}
@@ -16,10 +16,12 @@
 
 package net.sf.maven.plugin.autotools;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.maven.plugin.logging.Log;
 
@@ -31,9 +33,152 @@ public class StreamLogAdapter {
 
     private Log logger;
 
+    /** Decouples the logger from the child processes, if set. */
+    private AsyncLogSink sink;
+
+    /** Receives all output if set, the logger then only warnings. */
+    private LogSpool spool;
+
+    /** Collects compiler diagnostics from standard error, if set. */
+    private Diagnostics diagnostics;
+
+    /** */
+    private LineClassifier stdoutLevels;
+
+    /** */
+    private LineClassifier stderrLevels;
+
 
     public StreamLogAdapter(Log logger) {
         this.logger = logger;
+        stdoutLevels = new LineClassifier(DEFAULT_FILTERS, false);
+        stderrLevels = new LineClassifier(DEFAULT_FILTERS, true);
+    }
+
+
+    /**
+     * Creates an adapter logging from a thread of its own.
+     *
+     * @param logger the logger
+     * @param filters rules suppressing or reclassifying lines, taking
+     *                precedence over the built-in ones; may be
+     *                <code>null</code>
+     * @param bufferLines the number of lines buffered, 0 to log
+     *                    synchronously
+     * @param overflow what to do with a line when the buffer is full:
+     *                 'block', 'drop-info' or 'spill'
+     * @param spillFile the file receiving lines that do not fit into the
+     *                  buffer with 'spill'
+     * @throws IllegalArgumentException if the overflow policy or a filter
+     *                                  is invalid
+     */
+    public StreamLogAdapter(Log logger,
+                            LogFilter[] filters,
+                            int bufferLines,
+                            String overflow,
+                            File spillFile) {
+        this.logger = logger;
+        List<LogFilter> all = new ArrayList<LogFilter>();
+        if (filters != null) {
+            all.addAll(Arrays.asList(filters));
+        }
+        all.addAll(DEFAULT_FILTERS);
+        stdoutLevels = new LineClassifier(all, false);
+        stderrLevels = new LineClassifier(all, true);
+        AsyncLogSink.Overflow policy = AsyncLogSink.Overflow.forName(overflow);
+        if (bufferLines > 0) {
+            sink = new AsyncLogSink(logger, bufferLines, policy, spillFile);
+        }
+    }
+
+
+    /**
+     * Waits until all buffered lines have been logged.
+     *
+     * @throws IOException if the spill file can not be closed
+     */
+    public void close()
+    throws IOException {
+        try {
+            if (sink != null) {
+                sink.close();
+            }
+        } finally {
+            if (spool != null) {
+                spool.close();
+            }
+        }
+    }
+
+
+    /**
+     * Writes all output to compressed logs, one per step, leaving only
+     * warnings and errors to the logger.
+     *
+     * @param logDirectory the directory of the logs
+     */
+    public void spoolTo(File logDirectory) {
+        spool = new LogSpool(logDirectory);
+    }
+
+
+    /**
+     * Collects compiler diagnostics from standard error output.
+     */
+    public void collectDiagnostics() {
+        diagnostics = new Diagnostics();
+    }
+
+
+    /**
+     * Writes the diagnostics collected to a report, if any.
+     *
+     * @param report the report file
+     * @throws IOException if the report can not be written
+     */
+    public void writeDiagnostics(File report)
+    throws IOException {
+        if (diagnostics != null) {
+            diagnostics.write(report);
+        }
+    }
+
+
+    /**
+     * Starts a new step, written to a log of its own if output is
+     * spooled.
+     *
+     * @param step the name of the step, e.g. 'make'
+     * @throws IOException if the log can not be created
+     */
+    public void startStep(String step)
+    throws IOException {
+        if (spool != null) {
+            spool.startStep(step);
+        }
+    }
+
+
+    /**
+     * Logs the last lines of the current step as errors if output is
+     * spooled, after the adapter has been closed.
+     *
+     * @param count the maximum number of lines
+     */
+    public void reportFailure(int count) {
+        if (spool == null || spool.getLog() == null) {
+            return;
+        }
+        try {
+            File log = spool.getLog();
+            List<String> lines = spool.tail(count);
+            logger.error("Last lines of " + log + ":");
+            for (String line : lines) {
+                logger.error(line);
+            }
+        } catch (IOException ex) {
+            logger.warn("Failed to read " + spool.getLog(), ex);
+        }
     }
 
 
@@ -42,9 +187,7 @@ public class StreamLogAdapter {
             @Override
             public void writeLine(String line)
             throws IOException {
-                if (!SUPPRESS_LINES.contains(line.trim())) {
-                    logger.info(line);
-                }
+                log(false, stdoutLevels.classify(line), line);
             }
         };
     }
@@ -55,17 +198,39 @@ public class StreamLogAdapter {
             @Override
             public void writeLine(String line)
             throws IOException {
-                if (!line.contains(": installing ")
-                        && !SUPPRESS_LINES.contains(line.trim())) {
-                    logger.warn(line);
+                if (diagnostics != null) {
+                    diagnostics.parse(line);
                 }
+                log(true, stderrLevels.classify(line), line);
             }
         };
     }
 
-    private static final Set<String> SUPPRESS_LINES = new HashSet<String>();
+
+    private void log(boolean stderr, LineClassifier.Level level, String line)
+    throws IOException {
+        if (spool != null) {
+            spool.write(stderr, line);
+            if (level == LineClassifier.Level.INFO) {
+                return;
+            }
+        }
+        if (level == LineClassifier.Level.SUPPRESS) {
+            return;
+        }
+        if (sink != null) {
+            sink.write(level, line);
+        } else {
+            AsyncLogSink.log(logger, level, line);
+        }
+    }
+
+    private static final List<LogFilter> DEFAULT_FILTERS =
+        new ArrayList<LogFilter>();
 
     static {
+        DEFAULT_FILTERS.add(
+                new LogFilter(": installing ", null, "suppress", "stderr"));
         for (String s : new String[] {
             "-----------------------------------"
                 + "-----------------------------------",
@@ -86,7 +251,7 @@ public class StreamLogAdapter {
             "- add LIBDIR to the `PATH' environment variable",
             "- use the `-LLIBDIR' linker flag"
         }) {
-            SUPPRESS_LINES.add(s);
+            DEFAULT_FILTERS.add(new LogFilter(null, s, "suppress", null));
         }
     }
 
@@ -19,18 +19,37 @@ package net.sf.maven.plugin.autotools;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
- * Copies an input stream to an output stream.
+ * Copies an input stream to an output stream.  All stream pumps share a
+ * pool of daemon threads, so that threads and buffers are reused across
+ * child processes.
  */
 class StreamPump
 implements Runnable {
 
-    private static final int BUF_SIZE = 1024;
+    private static final int BUF_SIZE = 8192;
+
+    /** The threads running the pumps of all child processes. */
+    private static final ExecutorService PUMPS =
+        Executors.newCachedThreadPool(new PumpThreadFactory());
+
+    /** One buffer per pump thread. */
+    private static final ThreadLocal<byte[]> BUFFERS =
+        new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[BUF_SIZE];
+            }
+        };
 
     /** */
-    private Thread pumpThread;
+    private boolean started;
 
     /** */
     private InputStream in;
@@ -58,12 +77,11 @@ implements Runnable {
      * Starts this stream pump.
      */
     public void start() {
-        if (pumpThread != null) {
+        if (started) {
             throw new IllegalStateException("Stream pump already started");
         }
-        pumpThread = new Thread(this);
-        pumpThread.setDaemon(true);
-        pumpThread.start();
+        started = true;
+        PUMPS.execute(this);
     }
 
 
@@ -72,7 +90,7 @@ implements Runnable {
      */
     public void stop() {
         try {
-            pumpThread.join();
+            waitFor();
         } catch (InterruptedException e) {
         }
         try {
@@ -87,7 +105,7 @@ implements Runnable {
      * the end of the input stream has been reached or an error occurs.
      */
     public synchronized void run() {
-        byte[] buf = new byte[BUF_SIZE];
+        byte[] buf = BUFFERS.get();
 
         try {
             int size;
@@ -118,5 +136,24 @@ implements Runnable {
         }
     }
 
-}
 
+
+    /**
+     * Creates the daemon threads of the pump pool.
+     */
+    private static final class PumpThreadFactory
+    implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "autotools-stream-pump-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
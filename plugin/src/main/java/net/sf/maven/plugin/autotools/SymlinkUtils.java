@@ -19,8 +19,25 @@ package net.sf.maven.plugin.autotools;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class SymlinkUtils {
@@ -62,10 +79,79 @@ public class SymlinkUtils {
         }
         String relativePath =
             FileUtils.calculateRelativePath(linkDirectory, target);
-        String forcedOption = forced ? "-f" : "";
+        if (!Environment.getEnvironment().isWindows()) {
+            // Cygwin tools only understand links created by Cygwin's ln.
+            try {
+                Path linkPath = link.toPath();
+                if (forced) {
+                    Files.deleteIfExists(linkPath);
+                }
+                Files.createSymbolicLink(linkPath, Paths.get(relativePath));
+                return;
+            } catch (UnsupportedOperationException ex) {
+                // Fall back to 'ln -s' below.
+            } catch (InvalidPathException ex) {
+                // Not representable in sun.jnu.encoding, let the shell try.
+            }
+        }
+        createSymlinkWithShell(link, relativePath, forced ? "-f" : "");
+    }
+
+
+    /**
+     * Creates a symlink to a directory.  An existing symlink is replaced,
+     * whereas the directory it points to remains untouched.
+     *
+     * @param link the symlink
+     * @param target the directory
+     * @throws IOException if the symlink can not be created
+     */
+    public static void createDirectorySymlink(File link, File target)
+    throws IOException {
+        File linkDirectory = link.getParentFile();
+        if (!linkDirectory.isDirectory()) {
+            throw new IOException("Directory " + linkDirectory
+                                  + " does not exist");
+        }
+        if (target.getAbsolutePath().indexOf('\'') > -1) {
+            throw new IOException("Path name " + target.getPath()
+                                  + " contains single quotes");
+        }
+        if (link.getPath().indexOf('\'') > -1) {
+            throw new IOException("Link name " + link.getPath()
+                                  + " contains single quotes");
+        }
+        if (!target.isDirectory()) {
+            throw new IOException("Path " + target + " is not a directory");
+        }
+        String relativePath =
+            FileUtils.calculateRelativePath(linkDirectory, target);
+        if (!Environment.getEnvironment().isWindows()) {
+            try {
+                Path linkPath = link.toPath();
+                if (Files.isSymbolicLink(linkPath)) {
+                    Files.delete(linkPath);
+                }
+                Files.createSymbolicLink(linkPath, Paths.get(relativePath));
+                return;
+            } catch (UnsupportedOperationException ex) {
+                // Fall back to 'ln -s' below.
+            } catch (InvalidPathException ex) {
+                // Not representable in sun.jnu.encoding, let the shell try.
+            }
+        }
+        createSymlinkWithShell(link, relativePath, "-f -n");
+    }
+
+
+    private static void createSymlinkWithShell(File link,
+                                               String relativePath,
+                                               String options)
+    throws IOException {
+        File linkDirectory = link.getParentFile();
         String[] command = {
                 "sh", "-c",
-                "ln -s " + forcedOption
+                "ln -s " + options
                          + " '" + relativePath + "'"
                          + " '" + link.getName() + "'"
         };
@@ -90,6 +176,28 @@ public class SymlinkUtils {
         if (!linkDirectory.isDirectory()) {
             throw new IOException("Symbolic link not found " + link);
         }
+        if (!Environment.getEnvironment().isWindows()) {
+            try {
+                // Throws a NotLinkException unless link is a symlink.
+                Path resolvedPath = Files.readSymbolicLink(link.toPath());
+                if (resolvedPath.isAbsolute()) {
+                    return resolvedPath.toFile().getCanonicalFile();
+                }
+                return new File(linkDirectory, resolvedPath.toString())
+                    .getCanonicalFile();
+            } catch (UnsupportedOperationException ex) {
+                // Fall back to 'readlink' below.
+            } catch (InvalidPathException ex) {
+                // Not representable in sun.jnu.encoding, let the shell try.
+            }
+        }
+        return resolveSymlinkWithShell(link);
+    }
+
+
+    private static File resolveSymlinkWithShell(File link)
+    throws IOException {
+        File linkDirectory = link.getParentFile();
         if (link.getPath().indexOf('\'') > -1) {
             throw new IOException("Link name " + link.getPath()
                                   + " contains single quotes");
@@ -138,31 +246,122 @@ public class SymlinkUtils {
      * @see org.codehaus.plexus.util.FileUtils#deleteDirectory(java.io.File)
      */
     public static void deleteSymlinks(File file)
+    throws IOException {
+        deleteSymlinks(file, 1);
+    }
+
+
+    /**
+     * Deletes symlinks like {@link #deleteSymlinks(File)}, walking the
+     * subdirectories of a directory concurrently.  Links are never
+     * followed, except if the argument itself links to a directory.
+     *
+     * @param file a directory or a file
+     * @param parallelism the number of threads walking subdirectories;
+     *                    zero or less means one per available processor
+     * @throws IOException if an I/O error occurs
+     */
+    public static void deleteSymlinks(File file, int parallelism)
     throws IOException {
         if (file == null) {
             return;
         }
-        File canonical = file.getCanonicalFile();
-        if (file.isDirectory()) {
-            File[] children = file.listFiles();
-            if (children != null) {
-                for (int k = 0; k < children.length; ++k) {
-                    File child = children[k];
-                    File childCanonical = child.getCanonicalFile();
-                    if (childCanonical.getParentFile().equals(canonical)
-                            || !childCanonical.isDirectory()) {
-                        deleteSymlinks(child);
-                    }
+        Path root = file.toPath();
+        if (Files.isSymbolicLink(root)) {
+            if (!Files.isDirectory(root)) {
+                Files.deleteIfExists(root);
+                return;
+            }
+            root = root.toRealPath();
+        } else if (!Files.isDirectory(root)) {
+            return;
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if (parallelism == 1) {
+            Files.walkFileTree(root, new SymlinkDeleter());
+            return;
+        }
+        List<Path> subdirectories = new ArrayList<Path>();
+        DirectoryStream<Path> children = Files.newDirectoryStream(root);
+        try {
+            for (Path child : children) {
+                BasicFileAttributes attributes =
+                    Files.readAttributes(child, BasicFileAttributes.class,
+                                         LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isSymbolicLink()) {
+                    Files.deleteIfExists(child);
+                } else if (attributes.isDirectory()) {
+                    subdirectories.add(child);
                 }
             }
-        } else if (!file.equals(canonical)) {
-            File parent = file.getParentFile();
-            File parentCanonical = parent.getCanonicalFile();
-            if (parent.equals(parentCanonical)) {
-                file.delete();
+        } finally {
+            children.close();
+        }
+        deleteSymlinksConcurrently(subdirectories, parallelism);
+    }
+
+
+    private static void deleteSymlinksConcurrently(List<Path> directories,
+                                                   int parallelism)
+    throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, Math.max(1, directories.size())));
+        try {
+            List<Future<Path>> results = new ArrayList<Future<Path>>();
+            for (final Path directory : directories) {
+                results.add(executor.submit(new Callable<Path>() {
+                    public Path call()
+                    throws IOException {
+                        return Files.walkFileTree(directory,
+                                                  new SymlinkDeleter());
+                    }
+                }));
+            }
+            for (Future<Path> result : results) {
+                result.get();
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deleting symlinks", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Failed to delete symlinks", ex.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-}
 
+    /**
+     * Deletes the symlinks of a file tree without following them.
+     */
+    private static final class SymlinkDeleter
+    extends SimpleFileVisitor<Path> {
+
+        @Override
+        public FileVisitResult visitFile(Path file,
+                                         BasicFileAttributes attributes)
+        throws IOException {
+            if (attributes.isSymbolicLink()) {
+                Files.deleteIfExists(file);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex)
+        throws IOException {
+            if (ex instanceof NoSuchFileException) {
+                return FileVisitResult.CONTINUE;
+            }
+            throw ex;
+        }
+
+    }
+
+}
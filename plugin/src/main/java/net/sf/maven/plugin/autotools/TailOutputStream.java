@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+
+/**
+ * Keeps the last few kilobytes written to it.
+ */
+class TailOutputStream
+extends OutputStream {
+
+    private static final int TAIL_SIZE = 4096;
+
+    /** A ring buffer. */
+    private final byte[] tail = new byte[TAIL_SIZE];
+
+    /** The number of bytes written so far. */
+    private long count;
+
+
+    @Override
+    public synchronized void write(int b) {
+        tail[(int) (count++ % TAIL_SIZE)] = (byte) b;
+    }
+
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        for (int k = 0; k < len; ++k) {
+            tail[(int) (count++ % TAIL_SIZE)] = b[off + k];
+        }
+    }
+
+
+    /**
+     * Returns the bytes kept, decoded as UTF-8.
+     *
+     * @return the tail
+     */
+    @Override
+    public synchronized String toString() {
+        int size = (int) Math.min(count, TAIL_SIZE);
+        byte[] bytes = new byte[size];
+        for (int k = 0; k < size; ++k) {
+            bytes[k] = tail[(int) ((count - size + k) % TAIL_SIZE)];
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
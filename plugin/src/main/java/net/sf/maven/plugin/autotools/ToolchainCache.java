@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Keeps the results of toolchain probes, such as compiler characteristics
+ * and available headers and functions, per machine and compiler, and
+ * offers them to configure as a 'config.site' file.  The results are
+ * taken from the cache variables listed in the 'config.log' of successful
+ * configure runs.  Since the compiler binary is part of the key, a new or
+ * updated compiler starts with an empty cache.
+ */
+final class ToolchainCache {
+
+    /**
+     * Results that can only turn from 'no' to 'yes' with the include and
+     * library paths of a module's dependencies.  They are only kept if
+     * 'yes', and only from runs without dependencies, so that what one
+     * module's dependencies provide is not offered to all modules.
+     */
+    private static final String[] POSITIVE_PREFIXES = {
+        "ac_cv_header_", "ac_cv_func_", "ac_cv_lib_", "ac_cv_search_",
+        "ac_cv_have_decl_", "ac_cv_type_", "ac_cv_member_"
+    };
+
+    /** The heading of the cache variables in 'config.log'. */
+    private static final String CACHE_VARIABLES = "## Cache variables. ##";
+
+    /** */
+    private final ConfigureCache cache;
+
+
+    private ToolchainCache(ConfigureCache cache) {
+        this.cache = cache;
+    }
+
+
+    /**
+     * Returns the cache for the compiler configured in an environment.
+     *
+     * @param directory the directory of the machine-wide caches
+     * @param env the environment of configure
+     * @param platform the operating system and architecture
+     * @param host the '--host' argument of configure or <code>null</code>
+     * @return the cache or <code>null</code> if the compiler can not be
+     *         found
+     */
+    static ToolchainCache forCompiler(File directory,
+                                      Map<String, String> env,
+                                      String platform,
+                                      String host) {
+        String cc = env.get("CC");
+        if (cc == null || cc.trim().isEmpty()) {
+            cc = "cc";
+        }
+        File compiler =
+            findProgram(cc.trim().split("\\s+")[0], env.get("PATH"));
+        if (compiler == null) {
+            return null;
+        }
+        String identity;
+        try {
+            identity = compiler.getCanonicalPath() + ":" + compiler.length()
+                       + ":" + compiler.lastModified();
+        } catch (IOException ex) {
+            return null;
+        }
+        String key = ConfigureCache.key(
+                env,
+                platform + "\0" + identity + "\0" + env.get("PATH"),
+                host);
+        return new ToolchainCache(new ConfigureCache(directory, key));
+    }
+
+
+    /**
+     * Returns the site file to pass to configure as CONFIG_SITE.
+     *
+     * @return the site file, which may not exist yet
+     */
+    File getSiteFile() {
+        return cache.getFile();
+    }
+
+
+    /**
+     * Adds the toolchain results of a successful configure run.
+     *
+     * @param configLog the 'config.log' written by the run
+     * @param dependencies whether the run had the include or library
+     *                     paths of dependencies, in which case only the
+     *                     results not depending on them are added
+     * @throws IOException if the cache can not be updated
+     */
+    void harvest(File configLog, boolean dependencies)
+    throws IOException {
+        if (!configLog.isFile()) {
+            return;
+        }
+        List<String> lines =
+            Files.readAllLines(configLog.toPath(), StandardCharsets.ISO_8859_1);
+        StringBuilder results = new StringBuilder();
+        boolean inCacheVariables = false;
+        for (String line : lines) {
+            if (line.startsWith("## ")) {
+                if (!line.startsWith("## --")) {
+                    inCacheVariables = line.equals(CACHE_VARIABLES);
+                }
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (!inCacheVariables || eq <= 0) {
+                continue;
+            }
+            String name = line.substring(0, eq);
+            if (keep(name, line.substring(eq + 1), dependencies)) {
+                results.append("test \"${").append(name).append("+set}\"")
+                       .append(" = set || ").append(line).append('\n');
+            }
+        }
+        if (results.length() == 0) {
+            return;
+        }
+        File parent = cache.getFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile("config", ".site", parent);
+        try {
+            byte[] bytes =
+                results.toString().getBytes(StandardCharsets.ISO_8859_1);
+            Files.write(temp.toPath(), bytes);
+            cache.publish(temp);
+        } finally {
+            temp.delete();
+        }
+    }
+
+
+    private static boolean keep(String name,
+                                String value,
+                                boolean dependencies) {
+        if (!ConfigureCache.dependsOnDependencies(name)) {
+            return true;
+        }
+        if (dependencies) {
+            return false;
+        }
+        for (String prefix : POSITIVE_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return !value.equals("no") && !value.isEmpty();
+            }
+        }
+        return false;
+    }
+
+
+    private static File findProgram(String name, String path) {
+        if (name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0) {
+            File file = new File(name);
+            return file.isFile() ? file : null;
+        }
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (directory.isEmpty()) {
+                continue;
+            }
+            for (String suffix : new String[] { "", ".exe" }) {
+                File file = new File(directory, name + suffix);
+                if (file.isFile()) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+}
@@ -17,6 +17,7 @@
 package net.sf.maven.plugin.autotools;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
@@ -33,6 +34,7 @@ import org.codehaus.plexus.archiver.manager.ArchiverManager;
  *
  * @goal unpackDependencies
  * @phase generate-sources
+ * @threadSafe
  * @requiresDependencyResolution compile
  */
 public class UnpackDependenciesMojo
@@ -46,6 +48,15 @@ extends AbstractMojo {
      */
     private File dependenciesDirectory;
 
+    /**
+     * Alternative names for target platforms, see the compile goal. Taken
+     * from the executions of the compile goal if not set; the build fails
+     * if the two differ.
+     *
+     * @parameter
+     */
+    private Map<String,String> platformMapping;
+
     /**
      * To look up Archiver/UnArchiver implementations.
      *
@@ -64,6 +75,15 @@ extends AbstractMojo {
      */
     private MavenProject project;
 
+    /**
+     * The build session; typed as Object so that the plugin does not
+     * depend on maven-core.
+     *
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private Object session;
+
     /**
      * Used to avoid running this mojo multiple times with exactly the
      * same configuration.
@@ -77,13 +97,18 @@ extends AbstractMojo {
      */
     public void execute()
     throws MojoExecutionException {
-        if (repeated.alreadyRun(getClass().getName(),
+        if (repeated.alreadyRun(session,
+                                getClass().getName(),
                                 dependenciesDirectory)) {
             getLog().info("Skipping repeated execution");
             return;
         }
+        Environment environment =
+            Environment.getEnvironment().withPlatformMapping(
+                    PlatformMappings.resolve(project,
+                                             "unpackDependencies",
+                                             platformMapping));
         try {
-            Environment environment = Environment.getEnvironment();
             String classifier = environment.getClassifier();
             Set<Artifact> artifacts = getProjectArtifacts();
             boolean anyNativeDependencies = false;
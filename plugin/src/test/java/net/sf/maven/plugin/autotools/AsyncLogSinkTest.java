@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+
+public class AsyncLogSinkTest {
+
+    @Test
+    public void overflowWithStalledLogger()
+    throws Exception {
+        File spillFile = File.createTempFile("overflow", ".log");
+        spillFile.delete();
+        StalledLog log = new StalledLog();
+        AsyncLogSink sink = new AsyncLogSink(
+                log, 2, AsyncLogSink.Overflow.SPILL, spillFile);
+        try {
+            for (int k = 0; k < 10; ++k) {
+                sink.write(LineClassifier.Level.INFO, "line " + k);
+            }
+            log.release.countDown();
+            sink.close();
+            List<String> spilled =
+                Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+            assertEquals(10, log.lines.size() + spilled.size() - 1);
+            assertTrue(spilled.size() >= 7);
+            assertTrue(spilled.contains("[INFO] line 9"));
+        } finally {
+            spillFile.delete();
+        }
+
+        log = new StalledLog();
+        sink = new AsyncLogSink(log, 2, AsyncLogSink.Overflow.DROP_INFO, null);
+        for (int k = 0; k < 10; ++k) {
+            sink.write(LineClassifier.Level.INFO, "line " + k);
+        }
+        log.release.countDown();
+        sink.write(LineClassifier.Level.WARN, "warning");
+        sink.close();
+        assertTrue(log.lines.size() <= 5);
+        assertTrue(log.lines.contains("warning"));
+    }
+
+
+    @Test
+    public void neverSpillWarnings()
+    throws Exception {
+        File spillFile = File.createTempFile("overflow", ".log");
+        spillFile.delete();
+        final StalledLog log = new StalledLog();
+        AsyncLogSink sink = new AsyncLogSink(
+                log, 2, AsyncLogSink.Overflow.SPILL, spillFile);
+        try {
+            for (int k = 0; k < 5; ++k) {
+                sink.write(LineClassifier.Level.INFO, "line " + k);
+            }
+            Thread release = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    log.release.countDown();
+                }
+            };
+            release.start();
+            // Waits for the logger instead of spilling.
+            sink.write(LineClassifier.Level.WARN, "warning");
+            sink.write(LineClassifier.Level.ERROR, "error");
+            sink.close();
+            List<String> spilled =
+                Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+            for (String line : spilled) {
+                assertTrue(line, line.startsWith("[INFO] line "));
+            }
+            assertTrue(log.lines.indexOf("warning") >= 0);
+            assertEquals(log.lines.indexOf("warning") + 1,
+                         log.lines.indexOf("error"));
+        } finally {
+            spillFile.delete();
+        }
+    }
+
+
+    /**
+     * Holds up the first line logged until released.
+     */
+    private static final class StalledLog
+    extends SystemStreamLog {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final List<String> lines =
+            Collections.synchronizedList(new ArrayList<String>());
+
+
+        @Override
+        public void info(CharSequence content) {
+            await();
+            lines.add(content.toString());
+        }
+
+
+        @Override
+        public void warn(CharSequence content) {
+            await();
+            lines.add(content.toString());
+        }
+
+
+        @Override
+        public void error(CharSequence content) {
+            await();
+            lines.add(content.toString());
+        }
+
+
+        private void await() {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class AutoreconfCacheTest {
+
+    private static final List<String> COMMANDS =
+        Arrays.asList("autoreconf --install");
+
+    private static final String VERSIONS = "echo autoconf 2.69";
+
+
+    @Test
+    public void restoreGeneratedFiles()
+    throws Exception {
+        File root = new File("target/test-harness/autoreconf-cache");
+        FileUtils.deleteDirectory(root);
+        File first = new File(root, "first");
+        new File(first, "m4").mkdirs();
+        write(new File(first, "configure.ac"), "AC_INIT([x], [1])\n");
+        write(new File(first, "Makefile.am"), "SUBDIRS = .\n");
+        write(new File(first, "m4/x.m4"), "AC_DEFUN([X])\n");
+        AutoreconfCache cache =
+            new AutoreconfCache(new File(root, "cache"), 1024 * 1024);
+
+        String key = cache.key(first, COMMANDS, VERSIONS);
+        assertNotNull(key);
+        assertFalse(cache.restore(key, first));
+        Map<String, String> before = AutoreconfCache.snapshot(first);
+        File configure = new File(first, "configure");
+        write(configure, "#!/bin/sh\n");
+        configure.setExecutable(true);
+        configure.setLastModified(configure.lastModified() - 5000);
+        write(new File(first, "Makefile.in"), "all:\n");
+        cache.store(key, first, before);
+
+        File second = new File(root, "second");
+        new File(second, "m4").mkdirs();
+        write(new File(second, "configure.ac"), "AC_INIT([x], [1])\n");
+        write(new File(second, "Makefile.am"), "SUBDIRS = .\n");
+        write(new File(second, "m4/x.m4"), "AC_DEFUN([X])\n");
+        assertEquals(key, cache.key(second, COMMANDS, VERSIONS));
+        assertFalse(key.equals(cache.key(second, COMMANDS, "echo 2.71")));
+        assertTrue(cache.restore(key, second));
+        File restored = new File(second, "configure");
+        File makefileIn = new File(second, "Makefile.in");
+        assertEquals("#!/bin/sh\n", read(restored));
+        assertTrue(restored.canExecute());
+        assertEquals("all:\n", read(makefileIn));
+        assertFalse(new File(second, "configure.ac").canExecute());
+        assertTrue(restored.lastModified() < makefileIn.lastModified());
+
+        write(new File(second, "m4/x.m4"), "AC_DEFUN([Y])\n");
+        String changed = cache.key(second, COMMANDS, VERSIONS);
+        assertFalse(key.equals(changed));
+
+        // Fragments included by Makefile.am are inputs as well.
+        write(new File(second, "Makefile.am"), "include common.am\n");
+        write(new File(second, "common.am"), "AM_CFLAGS = -O2\n");
+        write(new File(second, "m4/rules.mk"), "X = 1\n");
+        key = cache.key(second, COMMANDS, VERSIONS);
+        write(new File(second, "common.am"), "AM_CFLAGS = -O3\n");
+        changed = cache.key(second, COMMANDS, VERSIONS);
+        assertFalse(key.equals(changed));
+        write(new File(second, "m4/rules.mk"), "X = 2\n");
+        assertFalse(changed.equals(cache.key(second, COMMANDS, VERSIONS)));
+    }
+
+
+    @Test
+    public void evictLeastRecentlyUsed()
+    throws Exception {
+        File root = new File("target/test-harness/autoreconf-eviction");
+        FileUtils.deleteDirectory(root);
+        File work = new File(root, "work");
+        work.mkdirs();
+        File caches = new File(root, "cache");
+        AutoreconfCache cache = new AutoreconfCache(caches, 1);
+
+        Map<String, String> before = AutoreconfCache.snapshot(work);
+        write(new File(work, "configure"), "#!/bin/sh\n");
+        cache.store("old", work, before);
+        new File(caches, "old.zip").setLastModified(0);
+        cache.store("new", work, before);
+        assertFalse(new File(caches, "old.zip").exists());
+        assertTrue(new File(caches, "new.zip").exists());
+    }
+
+
+    private static void write(File file, String content)
+    throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private static String read(File file)
+    throws Exception {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+}
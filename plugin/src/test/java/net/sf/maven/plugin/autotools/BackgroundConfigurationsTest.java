@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+
+public class BackgroundConfigurationsTest {
+
+    @Test
+    public void handOverPerSession()
+    throws Exception {
+        BackgroundConfigurations background = new BackgroundConfigurations();
+        Object session = new Object();
+        File directory = new File("target/test-harness/background/a");
+        Future<?> run = background.start(session, directory,
+                                         new Callable<String>() {
+                                             public String call() {
+                                                 return "done";
+                                             }
+                                         });
+        assertNull(background.take(new Object(), directory));
+        assertNull(background.take(session, new File("elsewhere")));
+        assertSame(run, background.take(session, directory));
+        assertNull(background.take(session, directory));
+        assertEquals("done", run.get());
+    }
+
+
+    @Test
+    public void cancelUnfinishedRuns()
+    throws Exception {
+        final File directory = new File("target/test-harness/background/b");
+        directory.mkdirs();
+        File created = new File(directory, "configured");
+        created.delete();
+        final AtomicBoolean cleanedUp = new AtomicBoolean();
+        BackgroundConfigurations background = new BackgroundConfigurations();
+        Future<?> run = background.start(null, directory,
+                new Callable<Void>() {
+                    public Void call()
+                    throws Exception {
+                        DefaultProcessExecutor exec =
+                            new DefaultProcessExecutor();
+                        exec.setStdout(new ByteArrayOutputStream());
+                        exec.setStderr(new ByteArrayOutputStream());
+                        try {
+                            exec.execProcess(new String[] {
+                                    "sh", "-c", "sleep 1; touch configured"
+                            }, null, directory);
+                        } finally {
+                            Thread.sleep(200);
+                            cleanedUp.set(true);
+                        }
+                        return null;
+                    }
+                });
+        Thread.sleep(300);
+        BackgroundConfigurations.cancelUnfinished(5000);
+        // Waits for the run to clean up, not just for the cancel.
+        assertTrue(cleanedUp.get());
+        assertTrue(run.isCancelled());
+        Thread.sleep(1500);
+        assertFalse(created.exists());
+        assertSame(run, background.take(null, directory));
+    }
+
+}
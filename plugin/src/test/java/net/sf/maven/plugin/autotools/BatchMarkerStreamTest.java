@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+
+public class BatchMarkerStreamTest {
+
+    @Test
+    public void stripMarkers()
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchMarkerStream markers = new BatchMarkerStream(out, 3);
+        assertEquals(-1, markers.getStep());
+        write(markers, marker(markers, 0) + "\none\n");
+        assertEquals(0, markers.getStep());
+        // Output without a trailing newline shares its line with the
+        // next marker.
+        write(markers, "two" + marker(markers, 1) + "\n");
+        assertEquals(1, markers.getStep());
+        write(markers, "three\n" + marker(markers, 2) + "\n");
+        markers.flush();
+        assertEquals("one\ntwo\nthree\n", out.toString("UTF-8"));
+        assertEquals(2, markers.getStep());
+        assertEquals(2, markers.getDurations().length);
+    }
+
+
+    @Test
+    public void markerSplitAcrossWrites()
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchMarkerStream markers = new BatchMarkerStream(out, 2);
+        String marker = marker(markers, 1);
+        write(markers, "partial");
+        // A flush in the middle of a line passes on what came so far ...
+        markers.flush();
+        assertEquals("partial", out.toString("UTF-8"));
+        write(markers, marker.substring(0, 10));
+        // ... unless it might be the start of a marker.
+        markers.flush();
+        write(markers, marker.substring(10) + "\nlast");
+        markers.flush();
+        assertEquals("partial\nlast", out.toString("UTF-8"));
+        assertEquals(1, markers.getStep());
+    }
+
+
+    @Test
+    public void ignoreUnknownSteps()
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchMarkerStream markers = new BatchMarkerStream(out, 1);
+        write(markers, marker(markers, 0) + "\n" + marker(markers, 5) + "\n");
+        assertEquals(0, markers.getStep());
+        assertEquals(0, markers.getDurations().length);
+        assertEquals("", out.toString("UTF-8"));
+    }
+
+
+    /**
+     * Returns what the marker command of a step prints.
+     */
+    private static String marker(BatchMarkerStream markers, int step) {
+        String command = markers.markerCommand(step);
+        return command.substring("echo '".length(), command.length() - 1);
+    }
+
+
+    private static void write(BatchMarkerStream markers, String text)
+    throws Exception {
+        byte[] bytes = text.getBytes("UTF-8");
+        markers.write(bytes, 0, bytes.length);
+    }
+
+}
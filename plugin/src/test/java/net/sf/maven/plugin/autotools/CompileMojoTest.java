@@ -19,18 +19,27 @@ package net.sf.maven.plugin.autotools;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.checkOrder;
 import static org.easymock.EasyMock.createStrictMock;
 import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.apache.maven.plugin.testing.SilentLog;
+import org.easymock.IAnswer;
 
 
 public class CompileMojoTest
@@ -76,8 +85,8 @@ extends AbstractMojoTestCase {
                     + FileUtils.fixAbsolutePathForUnixShell(
                           new File(installDirectory, "include")) + "\""
                 },
-                { "sh", "-c", "make" },
-                { "sh", "-c", "make install" }
+                { "sh", "-c", "make -j4 -l4 --output-sync=target" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target install" }
         };
         setupExpectations(name, commands);
         replay(exec);
@@ -110,8 +119,8 @@ extends AbstractMojoTestCase {
                     + FileUtils.fixAbsolutePathForUnixShell(
                           new File(installDirectory, "include")) + "\""
                 },
-                { "sh", "-c", "make" },
-                { "sh", "-c", "make install" }
+                { "sh", "-c", "make -j4 -l4 --output-sync=target" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target install" }
         };
         setupExpectations(name, commands);
         replay(exec);
@@ -148,8 +157,8 @@ extends AbstractMojoTestCase {
                     + FileUtils.fixAbsolutePathForUnixShell(
                           new File(installDirectory, "include")) + "\""
                 },
-                { "sh", "-c", "make" },
-                { "sh", "-c", "make install" }
+                { "sh", "-c", "make -j4 -l4 --output-sync=target" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target install" }
         };
         setupExpectations(name, commands);
         replay(exec);
@@ -189,8 +198,8 @@ extends AbstractMojoTestCase {
                     + FileUtils.fixAbsolutePathForUnixShell(
                           new File(installDirectory, "include")) + "\""
                 },
-                { "sh", "-c", "make" },
-                { "sh", "-c", "make install" }
+                { "sh", "-c", "make -j4 -l4 --output-sync=target" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target install" }
         };
         setupExpectations(name, commands);
         replay(exec);
@@ -230,8 +239,8 @@ extends AbstractMojoTestCase {
                     + FileUtils.fixAbsolutePathForUnixShell(
                           new File(installDirectory, "include")) + "\""
                 },
-                { "sh", "-c", "make" },
-                { "sh", "-c", "make install" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target" },
+                { "sh", "-c", "make -j4 -l4 --output-sync=target install" },
                 { "sh", postinstallScript}
         };
         setupExpectations(name, commands);
@@ -241,15 +250,186 @@ extends AbstractMojoTestCase {
     }
 
 
+    public void testEarlyConfigure()
+    throws Exception {
+        assertEquals(1, runEarlyConfigure(null));
+    }
+
+
+    public void testEarlyConfigureWithOtherArguments()
+    throws Exception {
+        assertEquals(2, runEarlyConfigure("--enable-other"));
+    }
+
+
+    /**
+     * Runs the configure goal and then the compile goal, which has the
+     * given configure arguments, and returns how often configure ran.
+     */
+    @SuppressWarnings("unchecked")
+    private int runEarlyConfigure(String configureArgs)
+    throws Exception {
+        String name = "early-configure";
+        Object session = new Object();
+        CompileMojo early = createCompileMojo(new ConfigureMojo(), name);
+        CompileMojo mojo = createCompileMojo(new CompileMojo(), name);
+        setVariableValueToObject(early, "session", session);
+        setVariableValueToObject(mojo, "session", session);
+        setVariableValueToObject(mojo, "configureArgs", configureArgs);
+        final File configureDirectory =
+            getTestFile("target/test-harness/" + name + "/configure");
+        final File workingDirectory =
+            getTestFile("target/test-harness/" + name + "/working");
+        File installDirectory =
+            getTestFile("target/test-harness/" + name + "/install");
+        Environment env = Environment.getEnvironment();
+        String host =
+            env.getSystemArchitecture() + "/" + env.getOperatingSystem();
+        String configure =
+            "../configure/configure"
+            + " --silent"
+            + " --bindir=\""
+            + FileUtils.fixAbsolutePathForUnixShell(
+                  new File(installDirectory, "bin/" + host)) + "\""
+            + " --libdir=\""
+            + FileUtils.fixAbsolutePathForUnixShell(
+                  new File(installDirectory, "lib/" + host)) + "\""
+            + " --includedir=\""
+            + FileUtils.fixAbsolutePathForUnixShell(
+                  new File(installDirectory, "include")) + "\"";
+        final AtomicInteger configureRuns = new AtomicInteger();
+        IAnswer<Object> configureAnswer = new IAnswer<Object>() {
+            public Object answer()
+            throws Exception {
+                configureRuns.incrementAndGet();
+                Files.write(new File(workingDirectory, "config.status")
+                            .toPath(), new byte[0]);
+                return null;
+            }
+        };
+        // configure runs in a thread of its own, concurrently with the
+        // logging setup of the compile goal.
+        checkOrder(exec, false);
+        exec.setStdout(isA(OutputStream.class));
+        expectLastCall().times(2);
+        exec.setStderr(isA(OutputStream.class));
+        expectLastCall().times(2);
+        expect(exec.execBatch(
+                eq(Arrays.asList("autoconf")),
+                (Map<String, String>) anyObject(),
+                eq(configureDirectory)))
+            .andAnswer(new IAnswer<long[]>() {
+                public long[] answer()
+                throws Exception {
+                    Files.write(new File(configureDirectory, "configure")
+                                .toPath(), "#!/bin/sh\n".getBytes("UTF-8"));
+                    return new long[1];
+                }
+            });
+        exec.execProcess(aryEq(new String[] {"sh", "-c", configure}),
+                         (Map<String, String>) anyObject(),
+                         eq(workingDirectory));
+        expectLastCall().andAnswer(configureAnswer);
+        if (configureArgs != null) {
+            exec.execProcess(
+                    aryEq(new String[] {
+                            "sh", "-c", configure + " " + configureArgs}),
+                    (Map<String, String>) anyObject(),
+                    eq(workingDirectory));
+            expectLastCall().andAnswer(configureAnswer);
+        }
+        exec.execProcess(
+                aryEq(new String[] {
+                        "sh", "-c", "make -j4 -l4 --output-sync=target"}),
+                (Map<String, String>) anyObject(),
+                eq(workingDirectory));
+        exec.execProcess(
+                aryEq(new String[] {
+                        "sh", "-c",
+                        "make -j4 -l4 --output-sync=target install"}),
+                (Map<String, String>) anyObject(),
+                eq(workingDirectory));
+        replay(exec);
+        early.execute();
+        mojo.execute();
+        verify(exec);
+        return configureRuns.get();
+    }
+
+
+    public void testSharedConfigureCache()
+    throws Exception {
+        File cacheDirectory =
+            getTestFile("target/test-harness/shared-cache/config-cache");
+        FileUtils.deleteDirectory(cacheDirectory);
+        cacheDirectory.mkdirs();
+        CompileMojo first = createCacheSharingMojo("shared-cache-first");
+        CompileMojo second = createCacheSharingMojo("shared-cache-second");
+        CompileMojo third = createCacheSharingMojo("shared-cache-third");
+        // The first and the third module have the same dependency.
+        for (String testCase : new String[] {
+                "shared-cache-first", "shared-cache-third"}) {
+            File include = getTestFile(
+                    "target/test-harness/" + testCase
+                    + "/dependencies/include/dep.h");
+            include.getParentFile().mkdirs();
+            Files.write(include.toPath(), "int dep;\n".getBytes("UTF-8"));
+        }
+        ConfigureCache cache = first.sharedConfigureCache();
+        assertEquals(cache.getFile(), second.sharedConfigureCache().getFile());
+        assertEquals(cache.getFile(), third.sharedConfigureCache().getFile());
+
+        File results = getTestFile(
+                "target/test-harness/shared-cache/config.cache");
+        Files.write(results.toPath(), (
+                "ac_cv_header_dep_h=${ac_cv_header_dep_h=yes}\n"
+                + "ac_cv_sizeof_int=${ac_cv_sizeof_int=4}\n"
+                + "ac_cv_env_CFLAGS_value='-I/first/dependencies/include'\n")
+                .getBytes("UTF-8"));
+        cache.publish(results);
+        second.sharedConfigureCache().restore(results);
+        String restored =
+            new String(Files.readAllBytes(results.toPath()), "UTF-8");
+        assertTrue(restored.contains("ac_cv_sizeof_int=${ac_cv_sizeof_int=4}"));
+        assertFalse(restored.contains("ac_cv_header_dep_h"));
+        assertFalse(restored.contains("ac_cv_env_CFLAGS_value"));
+        third.sharedConfigureCache().restore(results);
+        restored = new String(Files.readAllBytes(results.toPath()), "UTF-8");
+        assertTrue(restored.contains(
+                "ac_cv_header_dep_h=${ac_cv_header_dep_h=yes}"));
+    }
+
+
+    private CompileMojo createCacheSharingMojo(String testCase)
+    throws Exception {
+        CompileMojo mojo = createCompileMojo(testCase);
+        setVariableValueToObject(mojo, "configureCache", true);
+        setVariableValueToObject(
+                mojo, "configureCacheDirectory",
+                getTestFile("target/test-harness/shared-cache/config-cache"));
+        setVariableValueToObject(mojo, "environment",
+                                 Environment.getEnvironment());
+        return mojo;
+    }
+
+
     private CompileMojo createCompileMojo(String testCase)
     throws Exception {
-        CompileMojo mojo = new CompileMojo();
+        return createCompileMojo(new CompileMojo(), testCase);
+    }
+
+
+    private CompileMojo createCompileMojo(CompileMojo mojo, String testCase)
+    throws Exception {
         for (String target : MOJO_TARGETS) {
             File directory = createOrScrubTargetDirectory(testCase, target);
             setVariableValueToObject(mojo, target + "Directory", directory);
         }
         setVariableValueToObject(mojo, "autoreconf", false);
         setVariableValueToObject(mojo, "macroDirectoryName", "m4");
+        setVariableValueToObject(mojo, "makeJobs", 4);
+        setVariableValueToObject(mojo, "makeOutputSync", "target");
+        setVariableValueToObject(mojo, "logOverflow", "spill");
         setVariableValueToObject(
                 mojo, "nativeMainDirectory",
                 findSourceDirectory(testCase, "native"));
@@ -278,15 +458,27 @@ extends AbstractMojoTestCase {
             getTestFile("target/test-harness/" + name + "/working");
         File installDirectory =
             getTestFile("target/test-harness/" + name + "/install");
+        List<String> batch = new ArrayList<String>();
         for (String[] command : commands) {
             File directory = configureDirectory;
             if (command[1].endsWith("/postinstall.sh")) {
                 directory = installDirectory;
             } else if (command[2].startsWith("../configure/configure")
-                || command[2].equals("make")
-                || command[2].equals("make install")) {
+                || command[2].startsWith("make ")) {
                 directory = workingDirectory;
             }
+            if (directory.equals(configureDirectory)) {
+                batch.add(command[2]);
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                expect(exec.execBatch(
+                        eq(batch),
+                        (Map<String, String>) anyObject(),
+                        eq(configureDirectory)))
+                    .andReturn(new long[batch.size()]);
+                batch = new ArrayList<String>();
+            }
             exec.execProcess(
                     aryEq(command),
                     (Map<String, String>) anyObject(),
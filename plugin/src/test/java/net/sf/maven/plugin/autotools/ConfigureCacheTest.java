@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class ConfigureCacheTest {
+
+    @Test
+    public void mergeResultsOfModules()
+    throws Exception {
+        File root = new File("target/test-harness/configure-cache");
+        FileUtils.deleteDirectory(root);
+        root.mkdirs();
+        String key = ConfigureCache.key(
+                Collections.singletonMap("CC", "gcc"), "x86/linux", null);
+        assertFalse(key.equals(ConfigureCache.key(
+                Collections.singletonMap("CC", "clang"), "x86/linux", null)));
+        ConfigureCache cache =
+            new ConfigureCache(new File(root, "shared"), key);
+
+        File first = new File(root, "first.cache");
+        cache.restore(first);
+        assertFalse(first.exists());
+        write(first,
+              "# cache\n"
+              + "ac_cv_func_malloc=${ac_cv_func_malloc=yes}\n"
+              + "test \"${ac_cv_path_SED+set}\" = set"
+              + " || ac_cv_path_SED=${ac_cv_path_SED=/bin/sed}\n");
+        cache.publish(first);
+
+        File second = new File(root, "second.cache");
+        cache.restore(second);
+        List<String> restored =
+            Files.readAllLines(second.toPath(), StandardCharsets.UTF_8);
+        assertTrue(restored.contains(
+                "ac_cv_func_malloc=${ac_cv_func_malloc=yes}"));
+        write(second, "ac_cv_func_malloc=${ac_cv_func_malloc=no}\n"
+                      + "ac_cv_header_stdio_h=${ac_cv_header_stdio_h=yes}\n");
+        cache.publish(second);
+
+        File third = new File(root, "third.cache");
+        cache.restore(third);
+        List<String> merged =
+            Files.readAllLines(third.toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, merged.size());
+        assertTrue(merged.contains(
+                "ac_cv_func_malloc=${ac_cv_func_malloc=no}"));
+        assertTrue(merged.contains(
+                "ac_cv_header_stdio_h=${ac_cv_header_stdio_h=yes}"));
+        assertTrue(merged.contains(
+                "test \"${ac_cv_path_SED+set}\" = set"
+                + " || ac_cv_path_SED=${ac_cv_path_SED=/bin/sed}"));
+    }
+
+
+    private static void write(File file, String content)
+    throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class ConfigureStateTest {
+
+    @Test
+    public void configStatusForNewerTemplates()
+    throws Exception {
+        File root = new File("target/test-harness/configure-state");
+        FileUtils.deleteDirectory(root);
+        File configureDirectory = new File(root, "configure");
+        File workingDirectory = new File(root, "working");
+        configureDirectory.mkdirs();
+        workingDirectory.mkdirs();
+        write(new File(configureDirectory, "configure"), "#!/bin/sh\n");
+        File template = new File(configureDirectory, "Makefile.in");
+        write(template, "all:\n");
+        template.setLastModified(System.currentTimeMillis() - 60000);
+
+        ConfigureState state =
+            new ConfigureState(workingDirectory, configureDirectory);
+        Map<String, String> env = new HashMap<String, String>();
+        env.put("CFLAGS", "-O2");
+        String fingerprint = state.fingerprint(
+                "./configure", env, Collections.<String>emptySet());
+        assertEquals(ConfigureState.Action.CONFIGURE,
+                     state.check(fingerprint));
+
+        write(new File(workingDirectory, "config.status"), "#!/bin/sh\n");
+        state.store(fingerprint);
+        assertEquals(ConfigureState.Action.NONE, state.check(fingerprint));
+
+        template.setLastModified(System.currentTimeMillis() + 60000);
+        assertEquals(ConfigureState.Action.CONFIG_STATUS,
+                     state.check(fingerprint));
+
+        env.put("CFLAGS", "-O0");
+        String changed = state.fingerprint(
+                "./configure", env, Collections.<String>emptySet());
+        assertFalse(changed.equals(fingerprint));
+        assertEquals(ConfigureState.Action.CONFIGURE, state.check(changed));
+    }
+
+
+    private static void write(File file, String content)
+    throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+public class DefaultProcessExecutorTest {
+
+    @Test
+    public void interruptKills()
+    throws Exception {
+        // Interrupted right away, before or just after the child process
+        // has been started.
+        assertInterruptKills(new DefaultProcessExecutor(), "pending",
+                             "sleep 1; touch pending", 0);
+        // Interrupted while running, with a subshell of its own.
+        assertInterruptKills(new DefaultProcessExecutor(), "running",
+                             "(sleep 1; touch running) & wait", 300);
+        // Commands running in the long-lived shell are killed with it.
+        assertInterruptKills(new CoprocessExecutor(), "coprocess",
+                             "(sleep 1; touch coprocess) & wait", 300);
+    }
+
+
+    /**
+     * Interrupts a shell command creating a file after a second, after a
+     * delay, and checks that the file never appears.
+     */
+    private static void assertInterruptKills(
+            final DefaultProcessExecutor exec,
+            String name,
+            String command,
+            long delay)
+    throws Exception {
+        final File directory = new File("target/test-harness/interrupt");
+        directory.mkdirs();
+        File created = new File(directory, name);
+        created.delete();
+        exec.setStdout(new ByteArrayOutputStream());
+        exec.setStderr(new ByteArrayOutputStream());
+        final String[] shellCommand = {"sh", "-c", command};
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> result = pool.submit(new Callable<Void>() {
+                public Void call()
+                throws Exception {
+                    exec.execProcess(shellCommand, null, directory);
+                    return null;
+                }
+            });
+            Thread.sleep(delay);
+            assertTrue(result.cancel(true));
+            Thread.sleep(1500);
+            assertFalse(name, created.exists());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void batch()
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        DefaultProcessExecutor exec = new DefaultProcessExecutor();
+        exec.setStdout(out);
+        exec.setStderr(err);
+        long[] durations = exec.execBatch(
+                Arrays.asList("echo one", "printf two", "echo three >&2"),
+                null, null);
+        assertEquals(3, durations.length);
+        assertEquals("one\ntwo\n", out.toString("UTF-8"));
+        assertEquals("three\n", err.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void batchReportsFailingStep()
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DefaultProcessExecutor exec = new DefaultProcessExecutor();
+        exec.setStdout(out);
+        exec.setStderr(new ByteArrayOutputStream());
+        try {
+            exec.execBatch(
+                    Arrays.asList("echo one", "exit 3", "echo never"),
+                    null, null);
+            fail("The batch failed");
+        } catch (IOException ex) {
+            assertEquals("Command \"exit 3\" failed", ex.getMessage());
+            assertEquals("Child process \"sh\" terminated with code 3",
+                         ex.getCause().getMessage());
+        }
+        assertEquals("one\n", out.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void batchAlongsideOtherProcesses()
+    throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DefaultProcessExecutor exec = new DefaultProcessExecutor();
+        exec.setStdout(out);
+        exec.setStderr(new ByteArrayOutputStream());
+        final List<String> commands = new ArrayList<String>();
+        for (int k = 0; k < 20; ++k) {
+            commands.add("echo batch" + k + "; sleep 0.01");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<long[]> batch = pool.submit(new Callable<long[]>() {
+                public long[] call()
+                throws Exception {
+                    return exec.execBatch(commands, null, null);
+                }
+            });
+            Future<Void> single = pool.submit(new Callable<Void>() {
+                public Void call()
+                throws Exception {
+                    for (int k = 0; k < 20; ++k) {
+                        exec.execProcess(new String[] {
+                                "sh", "-c", "echo single" + k
+                        }, null, null);
+                    }
+                    return null;
+                }
+            });
+            single.get();
+            assertEquals(20, batch.get().length);
+        } finally {
+            pool.shutdownNow();
+        }
+        String output = out.toString("UTF-8");
+        assertFalse(output, output.contains("--autotools-step-"));
+        for (int k = 0; k < 20; ++k) {
+            assertTrue(output, output.contains("batch" + k + "\n"));
+            assertTrue(output, output.contains("single" + k + "\n"));
+        }
+    }
+
+}
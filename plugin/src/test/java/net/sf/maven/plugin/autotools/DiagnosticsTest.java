@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+
+public class DiagnosticsTest {
+
+    @Test
+    public void parseCompilerOutput()
+    throws Exception {
+        Diagnostics diagnostics = new Diagnostics();
+        for (String line : new String[] {
+            "In file included from src/foo.c:2:",
+            "src/foo.h:7:12: warning: unused variable 'x' [-Wunused-variable]",
+            "src/foo.c:3:1: error: expected ';' before '}' token",
+            "src/foo.c:9: warning: implicit declaration of function 'bar'"
+                + " [-Werror=implicit-function-declaration]",
+            "libtool: warning: remember to run 'libtool --finish /usr/lib'",
+            "/usr/bin/ld: bar.o: warning: relocation in read-only section",
+            "src/foo.c:12:5: note: declared here",
+            "make: *** [foo.o] Error 1"
+        }) {
+            diagnostics.parse(line);
+        }
+        assertEquals(4, diagnostics.getWarnings());
+        assertEquals(1, diagnostics.getErrors());
+
+        File report = new File("target/test-harness/diagnostics.xml");
+        diagnostics.write(report);
+        String xml = new String(Files.readAllBytes(report.toPath()),
+                                StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<file path=\"src/foo.c\" warnings=\"1\""
+                                + " errors=\"1\">"));
+        assertTrue(xml.contains("<category name=\"-Wunused-variable\""
+                                + " warnings=\"1\" errors=\"0\"/>"));
+        assertTrue(xml.contains("<diagnostic line=\"9\" severity=\"warning\""
+                                + " category=\"-Wimplicit-function-declaration\">"));
+        assertTrue(xml.contains("<file path=\"libtool\""));
+        assertTrue(xml.contains("<file path=\"bar.o\""));
+    }
+
+}
@@ -17,6 +17,8 @@
 package net.sf.maven.plugin.autotools;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -75,6 +77,23 @@ public class FileUtilsTest {
     }
 
 
+    @Test
+    public void fileExistsForSymlinksOnly()
+    throws Exception {
+        File sampleDirectory = createDirectory(root, "a/b");
+        createFile(sampleDirectory, "sample.txt", "Simple");
+        File linkDirectory = createDirectory(root, "c");
+        SymlinkUtils.createSymlink(new File(linkDirectory, "link"),
+                                   new File(sampleDirectory, "sample.txt"));
+        SymlinkUtils.createSymlink(new File(linkDirectory, "dangling"),
+                                   new File(sampleDirectory, "missing.txt"));
+        assertTrue(FileUtils.fileExists(linkDirectory, "link"));
+        assertFalse(FileUtils.fileExists(linkDirectory, "dangling"));
+        assertFalse(FileUtils.fileExists(sampleDirectory, "sample.txt"));
+        assertFalse(FileUtils.fileExists(linkDirectory, "missing"));
+    }
+
+
     private File createDirectory(File root, String path) {
         File directory = new File(root, path);
         directory.mkdirs();
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class JobserverTest {
+
+    @Test
+    public void tokens()
+    throws Exception {
+        final Jobserver js = new Jobserver(2);
+        try {
+            assertEquals(2, js.getSlots());
+            js.acquire();
+            js.acquire();
+            final CountDownLatch acquired = new CountDownLatch(1);
+            Thread waiter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        js.acquire();
+                        acquired.countDown();
+                    } catch (Exception ex) {
+                        // The assertion below fails.
+                    }
+                }
+            };
+            waiter.setDaemon(true);
+            waiter.start();
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+            js.release();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+            js.release();
+            js.release();
+        } finally {
+            js.close();
+        }
+    }
+
+
+    @Test
+    public void childProcessesShareTheFifo()
+    throws Exception {
+        Jobserver js = new Jobserver(2);
+        try {
+            String flags = js.getMakeFlags();
+            assertTrue(flags.startsWith("-j --jobserver-auth=fifo:"));
+            String fifo = flags.substring(flags.indexOf(':') + 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DefaultProcessExecutor exec = new DefaultProcessExecutor();
+            exec.setStdout(out);
+            exec.setJobserver(js);
+            // The child holds one token taken by the executor, takes the
+            // other one from the fifo and gives it back.
+            exec.execProcess(new String[] {
+                    "sh", "-c",
+                    "echo \"$MAKEFLAGS\"; "
+                    + "dd bs=1 count=1 2>/dev/null <" + fifo + "; echo; "
+                    + "printf + >" + fifo
+            }, null, null);
+            String[] lines = out.toString("UTF-8").split("\n");
+            assertEquals(flags, lines[0]);
+            assertEquals("+", lines[1]);
+            js.acquire();
+            js.acquire();
+            js.release();
+            js.release();
+        } finally {
+            js.close();
+        }
+    }
+
+
+    @Test
+    public void withholdTokensWhileMemoryIsLow()
+    throws Exception {
+        File meminfo = new File("target/test-harness/jobserver/meminfo");
+        meminfo.getParentFile().mkdirs();
+        writeAvailable(meminfo, 100 * 1024);
+        Jobserver js = new Jobserver(3);
+        try {
+            js.monitor(meminfo, 10);
+            js.setMinimumFreeMemory(200L * 1024 * 1024);
+            waitForWithheld(js, 2);
+            // One token is always left for the build to make progress.
+            Thread.sleep(100);
+            assertEquals(2, js.getWithheld());
+
+            writeAvailable(meminfo, 300 * 1024);
+            Thread.sleep(100);
+            assertEquals(2, js.getWithheld());
+
+            writeAvailable(meminfo, 500 * 1024);
+            waitForWithheld(js, 0);
+            js.acquire();
+            js.acquire();
+            js.acquire();
+        } finally {
+            js.close();
+        }
+    }
+
+
+    private static void waitForWithheld(Jobserver js, int tokens)
+    throws InterruptedException {
+        for (int k = 0; k < 500 && js.getWithheld() != tokens; ++k) {
+            Thread.sleep(10);
+        }
+        assertEquals(tokens, js.getWithheld());
+    }
+
+
+    private static void writeAvailable(File meminfo, long kilobytes)
+    throws Exception {
+        File temp = new File(meminfo.getPath() + ".tmp");
+        Files.write(temp.toPath(), (
+                "MemTotal:       16318412 kB\n"
+                + "MemFree:          123456 kB\n"
+                + "MemAvailable:   " + kilobytes + " kB\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        temp.renameTo(meminfo);
+    }
+
+}
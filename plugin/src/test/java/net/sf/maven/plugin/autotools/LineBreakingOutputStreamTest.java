@@ -17,10 +17,13 @@
 package net.sf.maven.plugin.autotools;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -66,5 +69,51 @@ public class LineBreakingOutputStreamTest {
         assertArrayEquals(expected, actual);
     }
 
-}
 
+    @Test
+    public void bulkWriteMatchesSingleBytes()
+    throws Exception {
+        Random random = new Random(42);
+        byte[][] pieces = {
+            "gcc -c foo.c\n".getBytes("UTF-8"),
+            "foo.c:3: warning: \u2018x\u2019 unused\r\n".getBytes("UTF-8"),
+            "\u00e4\u00f6\u00fc\u20ac".getBytes("UTF-8"),
+            "\ud83d\ude00".getBytes("UTF-8"),
+            { -61 }, { -20, 10 }, { -1, -2, -3, -4, -5 }, { 13, 13, 10 },
+            { -32, -128, -128 }, { -19, -96, -128 }
+        };
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (int k = 0; k < 2000; ++k) {
+            input.write(pieces[random.nextInt(pieces.length)]);
+        }
+        byte[] data = input.toByteArray();
+        final List<String> expected = new ArrayList<String>();
+        LineBreakingOutputStream single = new LineBreakingOutputStream() {
+            @Override
+            public void writeLine(String line)
+            throws IOException {
+                expected.add(line);
+            }
+        };
+        for (byte b : data) {
+            single.write(b);
+        }
+        single.close();
+        final List<String> actual = new ArrayList<String>();
+        LineBreakingOutputStream bulk = new LineBreakingOutputStream() {
+            @Override
+            public void writeLine(String line)
+            throws IOException {
+                actual.add(line);
+            }
+        };
+        for (int off = 0; off < data.length; ) {
+            int len = Math.min(data.length - off, 1 + random.nextInt(1024));
+            bulk.write(data, off, len);
+            off += len;
+        }
+        bulk.close();
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import net.sf.maven.plugin.autotools.LineClassifier.Level;
+
+import org.junit.Test;
+
+
+public class LineClassifierTest {
+
+    @Test
+    public void firstMatchingRuleWins()
+    throws Exception {
+        LogFilter regex = new LogFilter();
+        regex.setPattern("warning: .* is deprecated");
+        regex.setLevel("info");
+        LogFilter error = new LogFilter("undefined reference", null,
+                                        "error", null);
+        LogFilter banner = new LogFilter(null, "during linking",
+                                         "suppress", null);
+        LogFilter she = new LogFilter("she", null, "info", "stderr");
+        LogFilter hers = new LogFilter("hers", null, "suppress", "stderr");
+        LogFilter anyWarning = new LogFilter();
+        anyWarning.setPattern("warning:");
+        anyWarning.setLevel("error");
+        LineClassifier stderr = new LineClassifier(
+                Arrays.asList(regex, error, banner, she, hers, anyWarning),
+                true);
+        LineClassifier stdout = new LineClassifier(
+                Arrays.asList(regex, error, banner, she, hers, anyWarning),
+                false);
+
+        assertEquals(Level.WARN, stderr.classify("gcc -c foo.c"));
+        assertEquals(Level.INFO, stdout.classify("gcc -c foo.c"));
+        assertEquals(Level.INFO,
+                     stderr.classify("foo.c:1: warning: bar is deprecated"));
+        assertEquals(Level.ERROR, stderr.classify("foo.c:1: warning: x"));
+        assertEquals(Level.ERROR,
+                     stderr.classify("foo.o: undefined reference to `x'"));
+        assertEquals(Level.SUPPRESS, stderr.classify("  during linking "));
+        assertEquals(Level.WARN, stderr.classify("error during linking"));
+        assertEquals(Level.INFO, stderr.classify("ushers"));
+        assertEquals(Level.SUPPRESS, stderr.classify("hers"));
+        assertEquals(Level.INFO, stdout.classify("hers"));
+    }
+
+
+    @Test
+    public void backreferences()
+    throws Exception {
+        LogFilter group = new LogFilter();
+        group.setPattern("^(\\w+): warning");
+        group.setLevel("info");
+        LogFilter repeated = new LogFilter();
+        repeated.setPattern("(\\w+) \\1");
+        repeated.setLevel("suppress");
+        LogFilter named = new LogFilter();
+        named.setPattern("(?<word>x+)-\\k<word>$");
+        named.setLevel("error");
+        LogFilter escaped = new LogFilter();
+        escaped.setPattern("a\\\\1");
+        escaped.setLevel("error");
+        LineClassifier classifier = new LineClassifier(
+                Arrays.asList(group, repeated, named, escaped), false);
+
+        assertEquals(Level.INFO, classifier.classify("foo: warning the the"));
+        assertEquals(Level.SUPPRESS, classifier.classify("said the the"));
+        assertEquals(Level.INFO, classifier.classify("said the cat"));
+        assertEquals(Level.ERROR, classifier.classify("xx-xx"));
+        assertEquals(Level.INFO, classifier.classify("xx-xy"));
+        assertEquals(Level.ERROR, classifier.classify("a\\1"));
+        // The first matching rule still wins.
+        assertEquals(Level.INFO, classifier.classify("xx: warning xx-xx"));
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+
+public class LogSpoolTest {
+
+    @Test
+    public void readLinesThroughIndex()
+    throws Exception {
+        File directory = new File("target/test-harness/log-spool");
+        FileUtils.deleteDirectory(directory);
+        LogSpool spool = new LogSpool(directory);
+        spool.startStep("make");
+        for (int k = 0; k < 5000; ++k) {
+            spool.write(k % 7 == 0, "line " + k);
+        }
+        List<String> tail = spool.tail(3);
+        assertEquals(3, tail.size());
+        assertTrue(tail.get(2).endsWith(" O line 4999"));
+        spool.write(true, "line 5000");
+        spool.close();
+
+        File log = new File(directory, "make.log.gz");
+        List<String> lines = LogSpool.readLines(log, 2047, 3);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith(" O line 2047"));
+        assertTrue(lines.get(2).endsWith(" O line 2049"));
+        assertTrue(spool.tail(1).get(0).endsWith(" E line 5000"));
+
+        // The members make up one ordinary gzip file.
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(log)), "UTF-8"));
+        int count = 0;
+        try {
+            while (reader.readLine() != null) {
+                ++count;
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(5001, count);
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class MakeInvocationTest {
+
+    @Test
+    public void command() {
+        assertEquals("make -j4 -l4 --output-sync=target install",
+                     new MakeInvocation(4, 0, "target").command("install"));
+        assertEquals("make -j4 -l2.5",
+                     new MakeInvocation(4, 2.5f, "none").command());
+        assertEquals("make -j4 --output-sync=line",
+                     new MakeInvocation(4, -1, "line").command());
+        assertEquals("make -j4", new MakeInvocation(4, -1, null).command());
+        assertEquals("make check",
+                     new MakeInvocation(1, 0, "target").command("check"));
+        assertEquals(Runtime.getRuntime().availableProcessors(),
+                     new MakeInvocation(0, -1, "none").getJobs());
+    }
+
+
+    @Test
+    public void autoOutputSync() {
+        assertEquals("target", MakeInvocation.autoOutputSync(
+                "GNU Make 4.3\nBuilt for x86_64-pc-linux-gnu\n"));
+        assertEquals("target", MakeInvocation.autoOutputSync(
+                "GNU Make 4.0\n"));
+        assertNull(MakeInvocation.autoOutputSync(
+                "GNU Make 3.81\nThis program built for i386-apple-darwin11.3.0\n"));
+        assertNull(MakeInvocation.autoOutputSync(""));
+        String command = new MakeInvocation(4, -1, MakeInvocation.AUTO).command();
+        assertTrue(command.equals("make -j4")
+                   || command.equals("make -j4 --output-sync=target"));
+    }
+
+}
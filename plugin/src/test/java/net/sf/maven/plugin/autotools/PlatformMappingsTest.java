@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.junit.Test;
+
+
+public class PlatformMappingsTest {
+
+    @Test
+    public void takeMappingOfCompileGoal()
+    throws Exception {
+        MavenProject project = project(
+                "<configuration><platformMapping>"
+                + "<x86_64>amd64</x86_64>"
+                + "</platformMapping></configuration>",
+                "<configuration><platformMapping>"
+                + "<linux>gnu</linux>"
+                + "</platformMapping></configuration>");
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("x86_64", "amd64");
+        expected.put("linux", "gnu");
+        assertEquals(expected, PlatformMappings.ofCompileGoal(project));
+        assertEquals(expected,
+                     PlatformMappings.resolve(project, "jar", null));
+        assertEquals(expected,
+                     PlatformMappings.resolve(project, "jar", expected));
+        try {
+            PlatformMappings.resolve(
+                    project, "jar", Collections.singletonMap("linux", "gnu"));
+            fail();
+        } catch (MojoExecutionException ex) {
+            assertTrue(ex.getMessage().contains("jar goal"));
+        }
+    }
+
+
+    @Test
+    public void withoutCompileGoal()
+    throws Exception {
+        MavenProject project = new MavenProject(new Model());
+        assertNull(PlatformMappings.ofCompileGoal(project));
+        Map<String, String> own = Collections.singletonMap("linux", "gnu");
+        assertSame(own, PlatformMappings.resolve(project, "jar", own));
+        assertTrue(PlatformMappings.resolve(project, "jar", null).isEmpty());
+
+        project = project(null, null);
+        assertTrue(PlatformMappings.ofCompileGoal(project).isEmpty());
+        try {
+            PlatformMappings.resolve(project, "unpackDependencies", own);
+            fail();
+        } catch (MojoExecutionException ex) {
+            assertTrue(ex.getMessage().contains("unpackDependencies goal"));
+        }
+    }
+
+
+    private static MavenProject project(String pluginConfiguration,
+                                        String executionConfiguration)
+    throws Exception {
+        PluginExecution execution = new PluginExecution();
+        execution.setId("native");
+        execution.addGoal("compile");
+        if (executionConfiguration != null) {
+            execution.setConfiguration(Xpp3DomBuilder.build(
+                    new StringReader(executionConfiguration)));
+        }
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("net.sf.maven-autotools");
+        plugin.setArtifactId("maven-autotools-plugin");
+        if (pluginConfiguration != null) {
+            plugin.setConfiguration(Xpp3DomBuilder.build(
+                    new StringReader(pluginConfiguration)));
+        }
+        plugin.addExecution(execution);
+        Build build = new Build();
+        build.addPlugin(plugin);
+        Model model = new Model();
+        model.setBuild(build);
+        return new MavenProject(model);
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class RedirectingProcessExecutorTest {
+
+    private File logDirectory;
+
+    private ByteArrayOutputStream out;
+
+    private ByteArrayOutputStream err;
+
+    private RedirectingProcessExecutor exec;
+
+
+    @Before
+    public void setUp()
+    throws Exception {
+        logDirectory = new File("target/test-harness/redirecting");
+        FileUtils.deleteDirectory(logDirectory);
+        exec = new RedirectingProcessExecutor(logDirectory, "step");
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        exec.setStdout(out);
+        exec.setStderr(err);
+    }
+
+
+    @Test
+    public void appendToLogs()
+    throws Exception {
+        run("echo out1; echo err1 >&2");
+        assertEquals("", out.toString("UTF-8"));
+        assertEquals("err1\n", err.toString("UTF-8"));
+
+        err.reset();
+        run("echo out2; echo err2 >&2");
+        assertEquals("", out.toString("UTF-8"));
+        assertEquals("err2\n", err.toString("UTF-8"));
+        assertEquals("out1\nout2\n", read(exec.getStdoutLog()));
+        assertEquals("err1\nerr2\n", read(exec.getStderrLog()));
+
+        new RedirectingProcessExecutor(logDirectory, "step");
+        assertFalse(exec.getStdoutLog().exists());
+        assertFalse(exec.getStderrLog().exists());
+    }
+
+
+    @Test
+    public void copyTailsOfFailedProcess()
+    throws Exception {
+        run("echo earlier");
+        try {
+            run("echo out; echo err >&2; exit 3");
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("terminated with code 3"));
+            assertTrue(ex.getMessage().contains(
+                    exec.getStdoutLog().toString()));
+        }
+        assertEquals("out\n", out.toString("UTF-8"));
+        assertEquals("err\n", err.toString("UTF-8"));
+    }
+
+
+    @Test
+    public void copyCompleteLinesOnly()
+    throws Exception {
+        // 2000 lines of 50 bytes each exceed the 64 KiB copied.
+        run("i=0; while [ $i -lt 2000 ]; do"
+            + " printf '%049d\\n' $i >&2; i=$((i+1)); done");
+        String copied = err.toString("UTF-8");
+        assertTrue(copied.length() <= 64 * 1024);
+        assertTrue(copied.length() > 60 * 1024);
+        assertTrue(copied.endsWith(String.format("%049d\n", 1999)));
+        for (String line : copied.split("\n")) {
+            assertEquals(49, line.length());
+        }
+    }
+
+
+    @Test
+    public void batchWithoutMarkers()
+    throws Exception {
+        long[] durations = exec.execBatch(
+                Arrays.asList("echo one", "echo two; echo err >&2"),
+                null, null);
+        assertEquals(2, durations.length);
+        assertEquals("one\ntwo\n", read(exec.getStdoutLog()));
+        assertEquals("err\n", err.toString("UTF-8"));
+        assertEquals("", out.toString("UTF-8"));
+
+        err.reset();
+        try {
+            exec.execBatch(Arrays.asList("echo three", "exit 2", "echo four"),
+                           null, null);
+            fail();
+        } catch (IOException ex) {
+            assertEquals("Command \"exit 2\" failed", ex.getMessage());
+            assertTrue(ex.getCause().getMessage().contains(
+                    exec.getStdoutLog().toString()));
+        }
+        assertEquals("one\ntwo\nthree\n", read(exec.getStdoutLog()));
+        assertEquals("three\n", out.toString("UTF-8"));
+    }
+
+
+    private void run(String script)
+    throws Exception {
+        exec.execProcess(new String[] {"sh", "-c", script}, null, null);
+    }
+
+
+    private static String read(File file)
+    throws Exception {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+public class RepeatedExecutionsTest {
+
+    @Test
+    public void perSession() {
+        Object session = new Object();
+        RepeatedExecutions repeated = new RepeatedExecutions();
+        File directory = new File("target/work");
+        assertFalse(repeated.alreadyRun(session, "compile", directory));
+        assertTrue(repeated.alreadyRun(session, "compile", directory));
+        assertTrue(new RepeatedExecutions().alreadyRun(
+                session, "compile", new File(directory.getAbsolutePath())));
+        assertFalse(repeated.alreadyRun(session, "test", directory));
+        assertFalse(repeated.alreadyRun(new Object(), "compile", directory));
+    }
+
+
+    @Test
+    public void parallelExecutions()
+    throws Exception {
+        final Object session = new Object();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int k = 0; k < 64; ++k) {
+                final String module = "module-" + (k % 8);
+                results.add(threads.submit(new Callable<Boolean>() {
+                    public Boolean call()
+                    throws Exception {
+                        start.await();
+                        return new RepeatedExecutions().alreadyRun(
+                                session, "compile", module);
+                    }
+                }));
+            }
+            start.countDown();
+            int firstRuns = 0;
+            for (Future<Boolean> result : results) {
+                if (!result.get()) {
+                    ++firstRuns;
+                }
+            }
+            assertEquals(8, firstRuns);
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+
+    @Test
+    public void platformMappingDoesNotLeak() {
+        Environment global = Environment.getEnvironment();
+        String classifier = global.getClassifier();
+        Environment mapped = global.withPlatformMapping(
+                Collections.singletonMap(global.getOperatingSystem(), "other"));
+        assertNotSame(global, mapped);
+        assertEquals("other", mapped.getOperatingSystem());
+        assertEquals(classifier, global.getClassifier());
+        assertEquals(classifier, Environment.getEnvironment().getClassifier());
+    }
+
+}
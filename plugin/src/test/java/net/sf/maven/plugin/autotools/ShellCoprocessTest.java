@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+public class ShellCoprocessTest {
+
+    @Test
+    public void exitStatus()
+    throws Exception {
+        assertEquals(0, run("true").status);
+        assertEquals(1, run("false").status);
+        assertEquals(3, run("exit 3").status);
+        assertEquals(0, run("false; true").status);
+        assertEquals(42, run("sh -c 'exit 42'").status);
+        // A failed cd ends the command, not the shell.
+        Output missing = run("echo reached",
+                             new File("target/no-such-directory"));
+        assertEquals("", missing.out);
+        assertTrue(missing.status != 0);
+        assertEquals("reached\n", run("echo reached").out);
+    }
+
+
+    @Test
+    public void workingDirectory()
+    throws Exception {
+        File directory = new File("target").getCanonicalFile();
+        assertEquals(directory.getPath() + "\n",
+                     run("pwd -P", directory).out);
+        // The directory does not stick to the shell.
+        assertEquals(new File("").getCanonicalPath() + "\n",
+                     run("pwd -P").out);
+    }
+
+
+    @Test
+    public void commandReadingStdin()
+    throws Exception {
+        // Commands read an empty stdin rather than the script of the shell.
+        Output output = run("cat; echo done; read line; echo \"[$line]\"");
+        assertEquals("done\n[]\n", output.out);
+        assertEquals(0, run("cat >/dev/null; test -z \"$(cat)\"").status);
+        assertEquals("after\n", run("echo after").out);
+    }
+
+
+    @Test
+    public void outputWithoutTrailingNewline()
+    throws Exception {
+        Output output = run("printf out; printf err >&2");
+        assertEquals("out", output.out);
+        assertEquals("err", output.err);
+        assertEquals(0, output.status);
+        output = run("printf 'a\\nb'; printf 'c\\nd' >&2; exit 2");
+        assertEquals("a\nb", output.out);
+        assertEquals("c\nd", output.err);
+        assertEquals(2, output.status);
+        assertEquals("", run("true").out);
+    }
+
+
+    @Test
+    public void commandKillingTheShell()
+    throws Exception {
+        try {
+            run("echo before; kill -9 $$; echo after");
+            fail("The shell was killed");
+        } catch (IOException ex) {
+            assertEquals("Shell terminated unexpectedly", ex.getMessage());
+        }
+        // exec only replaces the subshell the command runs in.
+        assertEquals(0, run("exec true").status);
+        // Killed shells are not reused.
+        Output output = run("echo alive; echo err >&2");
+        assertEquals("alive\n", output.out);
+        assertEquals("err\n", output.err);
+        assertEquals(0, output.status);
+    }
+
+
+    @Test
+    public void interrupt()
+    throws Exception {
+        final File directory = new File("target/test-harness/shell");
+        directory.mkdirs();
+        File created = new File(directory, "interrupted");
+        created.delete();
+        final Exception[] thrown = new Exception[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ShellCoprocessTest.run("sleep 1; touch interrupted",
+                                           directory);
+                } catch (Exception ex) {
+                    thrown[0] = ex;
+                }
+            }
+        };
+        thread.start();
+        Thread.sleep(300);
+        thread.interrupt();
+        thread.join(5000);
+        assertTrue(thrown[0] instanceof InterruptedException);
+        Thread.sleep(1500);
+        assertFalse(created.exists());
+        assertEquals("next\n", run("echo next").out);
+    }
+
+
+    @Test
+    public void concurrentCallers()
+    throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; ++t) {
+                final int thread = t;
+                results.add(pool.submit(new Callable<Void>() {
+                    public Void call()
+                    throws Exception {
+                        for (int k = 0; k < 20; ++k) {
+                            String id = thread + "." + k;
+                            Output output = run(
+                                    "echo out" + id + "; echo err" + id
+                                    + " >&2; sleep 0.0$((" + k + " % 3));"
+                                    + " echo " + id + "; exit " + (k % 4));
+                            assertEquals("out" + id + "\n" + id + "\n",
+                                         output.out);
+                            assertEquals("err" + id + "\n", output.err);
+                            assertEquals(k % 4, output.status);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    private static Output run(String command)
+    throws Exception {
+        return run(command, null);
+    }
+
+
+    private static Output run(String command, File workingDirectory)
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = ShellCoprocess.execute(command, workingDirectory, out, err);
+        return new Output(status, out.toString("UTF-8"), err.toString("UTF-8"));
+    }
+
+
+    private static final class Output {
+
+        /** */
+        private final int status;
+
+        /** */
+        private final String out;
+
+        /** */
+        private final String err;
+
+
+        Output(int status, String out, String err) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+        }
+
+    }
+
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class SourceMirrorTest {
+
+    private File root;
+
+
+    @Before
+    public void setUp()
+    throws Exception {
+        root = makeTestRoot();
+    }
+
+
+    @After
+    public void tearDown()
+    throws Exception {
+        if (root != null) {
+            try {
+                SymlinkUtils.deleteSymlinks(root);
+            } finally {
+                FileUtils.deleteDirectory(root);
+            }
+        }
+        root = null;
+    }
+
+
+    @Test
+    public void mirrorTree()
+    throws Exception {
+        File source = createDirectory(root, "source");
+        createFile(source, "a.c", "A");
+        createFile(createDirectory(source, "sub"), "b.c", "B");
+        createFile(source, ".hidden", "H");
+        for (int k = 0; k < 20; ++k) {
+            File directory = createDirectory(source, "x" + k + "/y/z");
+            createFile(directory, "c" + k + ".c", "C" + k);
+        }
+        File destination = createDirectory(root, "destination");
+        SourceMirror mirror = new SourceMirror(null, 4);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(22, mirror.getCreatedLinks());
+        assertEquals("A", FileUtils.fileRead(new File(destination, "a.c")));
+        assertEquals("B", FileUtils.fileRead(new File(destination, "sub/b.c")));
+        for (int k = 0; k < 20; ++k) {
+            File link = new File(destination, "x" + k + "/y/z/c" + k + ".c");
+            assertEquals("C" + k, FileUtils.fileRead(link));
+        }
+        assertFalse(new File(destination, ".hidden").exists());
+    }
+
+
+    @Test
+    public void mirrorIncrementally()
+    throws Exception {
+        File manifest = new File(root, "staging.manifest");
+        File source = createDirectory(root, "source");
+        createFile(source, "a.c", "A");
+        File deleted = createFile(source, "b.c", "B");
+        File destination = createDirectory(root, "destination");
+        SourceMirror mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(2, mirror.getCreatedLinks());
+        assertTrue(manifest.isFile());
+
+        deleted.delete();
+        createFile(source, "c.c", "C");
+        mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(1, mirror.getCreatedLinks());
+        assertEquals(1, mirror.getRemovedLinks());
+        assertFalse(Files.isSymbolicLink(new File(destination, "b.c").toPath()));
+        assertEquals("C", FileUtils.fileRead(new File(destination, "c.c")));
+
+        new File(destination, "a.c").delete();
+        mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(1, mirror.getCreatedLinks());
+        assertEquals(0, mirror.getRemovedLinks());
+        assertEquals("A", FileUtils.fileRead(new File(destination, "a.c")));
+
+        File link = new File(destination, "a.c");
+        link.delete();
+        Files.createSymbolicLink(link.toPath(),
+                                 new File(source, "c.c").getAbsoluteFile().toPath());
+        mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(1, mirror.getCreatedLinks());
+        assertEquals("A", FileUtils.fileRead(link));
+    }
+
+
+    @Test
+    public void mirrorTopLevel()
+    throws Exception {
+        File scripts = createDirectory(root, "autotools");
+        createFile(createDirectory(scripts, "merged"), "Makefile.am", "M");
+        File source = createDirectory(root, "native");
+        createFile(source, "a.c", "A");
+        File linked = createDirectory(source, "linked/deep");
+        createFile(linked, "b.c", "B");
+        createFile(createDirectory(source, "merged"), "c.c", "C");
+        File destination = createDirectory(root, "destination");
+        SourceMirror mirror = new SourceMirror(null, 1);
+        mirror.mirror(scripts, destination);
+        mirror.mirrorTopLevel(source, destination);
+        mirror.finish();
+        assertTrue(Files.isSymbolicLink(new File(destination, "linked").toPath()));
+        assertFalse(Files.isSymbolicLink(new File(destination, "merged").toPath()));
+        assertEquals("B", FileUtils.fileRead(
+                new File(destination, "linked/deep/b.c")));
+        assertEquals("C", FileUtils.fileRead(
+                new File(destination, "merged/c.c")));
+
+        SymlinkUtils.deleteSymlinks(destination);
+        assertFalse(new File(destination, "linked").exists());
+        assertTrue(new File(linked, "b.c").exists());
+    }
+
+
+    @Test
+    public void mirrorWithHardLinks()
+    throws Exception {
+        File manifest = new File(root, "staging.manifest");
+        File source = createDirectory(root, "source");
+        File deleted = createFile(source, "a.c", "A");
+        createFile(createDirectory(source, "sub"), "b.c", "B");
+        File destination = createDirectory(root, "destination");
+        SourceMirror mirror =
+            new SourceMirror(manifest, 1, SourceMirror.LinkKind.HARD);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        File link = new File(destination, "sub/b.c");
+        assertFalse(Files.isSymbolicLink(link.toPath()));
+        assertTrue(Files.isSameFile(link.toPath(),
+                                    new File(source, "sub/b.c").toPath()));
+        assertEquals(2, mirror.getStagedFiles().size());
+
+        deleted.delete();
+        mirror = new SourceMirror(manifest, 1, SourceMirror.LinkKind.HARD);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(0, mirror.getCreatedLinks());
+        assertEquals(1, mirror.getRemovedLinks());
+        assertFalse(new File(destination, "a.c").exists());
+    }
+
+
+    @Test
+    public void switchStagingMode()
+    throws Exception {
+        File manifest = new File(root, "staging.manifest");
+        File source = createDirectory(root, "source");
+        createFile(source, "a.c", "A");
+        createFile(createDirectory(source, "sub"), "b.c", "B");
+        File destination = createDirectory(root, "destination");
+        File link = new File(destination, "sub/b.c");
+        SourceMirror mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertTrue(Files.isSymbolicLink(link.toPath()));
+
+        mirror = new SourceMirror(manifest, 1, SourceMirror.LinkKind.HARD);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(2, mirror.getCreatedLinks());
+        assertFalse(Files.isSymbolicLink(link.toPath()));
+        assertTrue(Files.isSameFile(link.toPath(),
+                                    new File(source, "sub/b.c").toPath()));
+
+        mirror = new SourceMirror(manifest, 1, SourceMirror.LinkKind.HARD);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(0, mirror.getCreatedLinks());
+
+        // Where copy-on-write clones are not supported, the sources are
+        // linked symbolically instead.
+        mirror = new SourceMirror(manifest, 2, SourceMirror.LinkKind.REFLINK);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(2, mirror.getCreatedLinks());
+        assertEquals("B", FileUtils.fileRead(link));
+        boolean reflinked = !Files.isSymbolicLink(link.toPath());
+        assertEquals(reflinked ? 2 : 0, mirror.getStagedFiles().size());
+        if (reflinked) {
+            assertFalse(Files.isSameFile(link.toPath(),
+                                         new File(source, "sub/b.c").toPath()));
+        }
+
+        mirror = new SourceMirror(manifest, 1);
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(reflinked ? 2 : 0, mirror.getCreatedLinks());
+        assertTrue(Files.isSymbolicLink(link.toPath()));
+        assertEquals("A", FileUtils.fileRead(new File(destination, "a.c")));
+    }
+
+
+    @Test
+    public void reflinkOneDirectoryAtATime()
+    throws Exception {
+        File source = createDirectory(root, "source");
+        for (int k = 0; k < 5; ++k) {
+            createFile(source, "a" + k + ".c", "A" + k);
+            createFile(createDirectory(source, "sub"), "b" + k + ".c", "B" + k);
+        }
+        File destination = createDirectory(root, "destination");
+        final List<String> commands =
+            Collections.synchronizedList(new ArrayList<String>());
+        SourceMirror mirror =
+            new SourceMirror(null, 1, SourceMirror.LinkKind.REFLINK);
+        mirror.setCopier(new CoprocessExecutor() {
+            @Override
+            protected int runProcess(String[] command,
+                                     Map<String, String> env,
+                                     File workingDirectory,
+                                     OutputStream out,
+                                     OutputStream err)
+            throws IOException, InterruptedException {
+                commands.add(command[2]);
+                return super.runProcess(command, env, workingDirectory,
+                                        out, err);
+            }
+        });
+        mirror.mirror(source, destination);
+        mirror.finish();
+        assertEquals(10, mirror.getCreatedLinks());
+        assertEquals("B4", FileUtils.fileRead(new File(destination, "sub/b4.c")));
+        // Without support for reflinks, the first copy gives up.
+        assertTrue(commands.size() == 1 || commands.size() == 2);
+        assertTrue(commands.get(0).startsWith("cp --reflink=always"));
+    }
+
+
+    private File createDirectory(File root, String path) {
+        File directory = new File(root, path);
+        directory.mkdirs();
+        return directory;
+    }
+
+
+    private File createFile(File targetDirectory, String name, String content)
+    throws FileNotFoundException,
+            IOException, UnsupportedEncodingException {
+        File target = new File(targetDirectory, name);
+        OutputStream ostream = new FileOutputStream(target);
+        try {
+            ostream.write(content.getBytes("ASCII"));
+        } finally {
+            ostream.close();
+        }
+        return target;
+    }
+
+
+    private static File makeTestRoot()
+    throws IOException {
+        File directory = File.createTempFile("sourcemirror-", "");
+        directory.delete();
+        directory.mkdir();
+        return directory.getCanonicalFile();
+    }
+
+}
@@ -18,6 +18,7 @@
 package net.sf.maven.plugin.autotools;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -27,6 +28,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
 
 import org.junit.After;
 import org.junit.Assume;
@@ -124,6 +126,46 @@ public class SymlinkUtilsTest {
     }
 
 
+    @Test
+    public void replaceSymlinkWhenForced()
+    throws Exception {
+        File targetDirectory = createDirectory(root, "a/b1");
+        File first = createFile(targetDirectory, "first.txt", "First");
+        File second = createFile(targetDirectory, "second.txt", "Second");
+        File linkDirectory = createDirectory(root, "a/b2/c2");
+        File link = new File(linkDirectory, "link");
+        SymlinkUtils.createSymlink(link, first);
+        SymlinkUtils.createSymlink(link, second, true);
+        File resolved = SymlinkUtils.resolveSymlink(link);
+        assertEquals("Second", FileUtils.fileRead(resolved));
+        assertEquals(second.getCanonicalFile(), resolved);
+    }
+
+
+    @Test
+    public void deleteSymlinksConcurrently()
+    throws Exception {
+        File targetDirectory = createDirectory(root, "source/deep");
+        File target = createFile(targetDirectory, "target.txt", "Kept");
+        File regular = createFile(createDirectory(root, "build/a"),
+                                  "regular.txt", "Regular");
+        for (int k = 0; k < 8; ++k) {
+            File linkDirectory = createDirectory(root, "build/b" + k + "/c");
+            SymlinkUtils.createSymlink(new File(linkDirectory, "link"), target);
+        }
+        File linkedDirectory = new File(root, "build/a/linked");
+        SymlinkUtils.createDirectorySymlink(linkedDirectory,
+                                            targetDirectory);
+        SymlinkUtils.deleteSymlinks(new File(root, "build"), 4);
+        for (int k = 0; k < 8; ++k) {
+            assertFalse(new File(root, "build/b" + k + "/c/link").exists());
+        }
+        assertFalse(Files.isSymbolicLink(linkedDirectory.toPath()));
+        assertTrue(regular.exists());
+        assertTrue(target.exists());
+    }
+
+
     @Test
     public void failCreateSymlinkWithSingleQuote()
     throws Exception {
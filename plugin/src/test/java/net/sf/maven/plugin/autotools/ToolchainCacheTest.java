@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2006-2013 Holger Joest <holger@joest.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.maven.plugin.autotools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class ToolchainCacheTest {
+
+    @Test
+    public void harvestConfigLog()
+    throws Exception {
+        File root = new File("target/test-harness/toolchain-cache");
+        FileUtils.deleteDirectory(root);
+        root.mkdirs();
+        File compiler = new File(root, "mycc");
+        Files.write(compiler.toPath(), "#!/bin/sh\n".getBytes("UTF-8"));
+
+        Map<String, String> env = new HashMap<String, String>();
+        env.put("CC", compiler.getAbsolutePath() + " -m64");
+        File caches = new File(root, "caches");
+        ToolchainCache cache =
+            ToolchainCache.forCompiler(caches, env, "x86/linux", null);
+        assertNotNull(cache);
+        env.put("CC", "no-such-compiler");
+        assertNull(ToolchainCache.forCompiler(caches, env, "x86/linux", null));
+
+        File configLog = new File(root, "config.log");
+        Files.write(configLog.toPath(), (
+                "## ---------------- ##\n"
+                + "## Cache variables. ##\n"
+                + "## ---------------- ##\n"
+                + "\n"
+                + "ac_cv_c_compiler_gnu=yes\n"
+                + "ac_cv_env_CC_set=set\n"
+                + "ac_cv_header_stdio_h=yes\n"
+                + "ac_cv_header_foo_h=no\n"
+                + "ac_cv_search_sqrt='none required'\n"
+                + "ac_cv_sizeof_long=8\n"
+                + "\n"
+                + "## ----------------- ##\n"
+                + "## Output variables. ##\n"
+                + "## ----------------- ##\n"
+                + "\n"
+                + "CC='mycc'\n").getBytes("UTF-8"));
+        cache.harvest(configLog, false);
+
+        List<String> site = Files.readAllLines(
+                cache.getSiteFile().toPath(), StandardCharsets.UTF_8);
+        assertTrue(site.contains("test \"${ac_cv_sizeof_long+set}\" = set"
+                                 + " || ac_cv_sizeof_long=8"));
+        assertTrue(site.contains("test \"${ac_cv_search_sqrt+set}\" = set"
+                                 + " || ac_cv_search_sqrt='none required'"));
+        String all = site.toString();
+        assertTrue(all.contains("ac_cv_header_stdio_h=yes"));
+        assertTrue(all.contains("ac_cv_c_compiler_gnu=yes"));
+        assertFalse(all.contains("ac_cv_header_foo_h"));
+        assertFalse(all.contains("ac_cv_env_CC_set"));
+        assertFalse(all.contains("CC='mycc'"));
+        assertEquals(6, site.size());
+
+        // The paths of dependencies can turn headers and libraries from
+        // 'no' to 'yes', which must not reach other modules.
+        Files.write(configLog.toPath(), (
+                "## Cache variables. ##\n"
+                + "\n"
+                + "ac_cv_header_bar_h=yes\n"
+                + "ac_cv_lib_bar_bar_open=yes\n"
+                + "ac_cv_sizeof_int=4\n"
+                + "\n"
+                + "## Output variables. ##\n").getBytes("UTF-8"));
+        cache.harvest(configLog, true);
+        site = Files.readAllLines(
+                cache.getSiteFile().toPath(), StandardCharsets.UTF_8);
+        all = site.toString();
+        assertTrue(all.contains("ac_cv_sizeof_int=4"));
+        assertTrue(all.contains("ac_cv_header_stdio_h=yes"));
+        assertFalse(all.contains("ac_cv_header_bar_h"));
+        assertFalse(all.contains("ac_cv_lib_bar_bar_open"));
+    }
+
+}